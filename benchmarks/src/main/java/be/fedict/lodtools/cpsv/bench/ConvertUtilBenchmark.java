@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.bench;
+
+import be.fedict.lodtools.cpsv.ConvertUtil;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.IRI;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building IRIs for shared nodes.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ConvertUtilBenchmark {
+	@Param({"sha1", "murmur3"})
+	public String hash;
+	
+	public String mainCode = "12345";
+	public String subCode = "1";
+	public String price = "<div><p>25 euro per aanvraag, te betalen via " 
+							+ "overschrijving op rekening BE00 0000 0000 0000</p></div>";
+	public String sector = "45";
+	public String activity = "22";
+	public String bce = "0123456789";
+	public String code = "ADM 12";
+	private int next = 0;
+	
+	@Setup
+	public void setup() {
+		ConvertUtil.setIdHash(ConvertUtil.IdHash.get(hash));
+	}
+	
+	@Benchmark
+	public IRI addrID() {
+		return ConvertUtil.addrID(mainCode, subCode);
+	}
+	
+	@Benchmark
+	public IRI costID() {
+		return ConvertUtil.costID(price);
+	}
+	
+	@Benchmark
+	public IRI costIDNew() {
+		// different text each time, so the cached IRI can't be used
+		return ConvertUtil.costID(price + next++);
+	}
+	
+	@Benchmark
+	public IRI sectorID() {
+		return ConvertUtil.sectorID(sector, activity);
+	}
+	
+	@Benchmark
+	public IRI adminIDBce() {
+		return ConvertUtil.adminID(bce, code);
+	}
+	
+	@Benchmark
+	public IRI adminIDCode() {
+		return ConvertUtil.adminID(null, code);
+	}
+}
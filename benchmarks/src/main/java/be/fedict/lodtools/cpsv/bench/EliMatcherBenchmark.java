@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.bench;
+
+import be.fedict.lodtools.cpsv.EliKey;
+import be.fedict.lodtools.cpsv.EliMatcher;
+import be.fedict.lodtools.cpsv.EliTestServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.IRI;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Parsing framework titles and matching them against a local stub ELI service.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class EliMatcherBenchmark {
+	public String titleNL = "Wet van 12 januari 2007 betreffende de erkenning";
+	public String titleFR = "Loi du 13 mars 2011 relative aux services";
+	public String noMatch = "Koninklijk besluit betreffende de erkenning";
+	
+	private final List<EliKey> batch = new ArrayList<>();
+	private EliTestServer server;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		server = new EliTestServer(0, EliTestServer.stub(0), false);
+		EliMatcher.setEndpoint(server.getURL());
+		EliMatcher.setRateLimit(0);
+		for (int i = 0; i < 32; i++) {
+			batch.add(new EliKey("2007-01-12", "LAW", "Wet betreffende de erkenning " + i));
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		server.close();
+	}
+	
+	@Benchmark
+	public EliKey parseNL() {
+		return EliMatcher.parse(titleNL);
+	}
+	
+	@Benchmark
+	public EliKey parseFR() {
+		return EliMatcher.parse(titleFR);
+	}
+	
+	@Benchmark
+	public EliKey parseNoMatch() {
+		return EliMatcher.parse(noMatch);
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Set<IRI> matchStub() {
+		return EliMatcher.match(titleNL);
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public int matchEach() {
+		int n = 0;
+		for (EliKey key: batch) {
+			n += EliMatcher.match(key).size();
+		}
+		return n;
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public int matchBatch() {
+		return EliMatcher.match(batch).size();
+	}
+}
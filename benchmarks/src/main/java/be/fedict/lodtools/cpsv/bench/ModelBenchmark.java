@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.bench;
+
+import be.fedict.lodtools.cpsv.CompactModel;
+import be.fedict.lodtools.cpsv.CorpusGenerator;
+import be.fedict.lodtools.cpsv.Main;
+import be.fedict.lodtools.cpsv.vocab.CPSV;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building the RDF model of the corpus and looking up the framework titles,
+ * using the rdf4j LinkedHashModel or the dictionary-encoded CompactModel.
+ * Run with -prof gc to compare allocation.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ModelBenchmark {
+	@Param({"linked", "compact"})
+	public String impl;
+	
+	private Model m;
+	
+	/**
+	 * Create an empty model
+	 * 
+	 * @return model
+	 */
+	private Model create() {
+		return impl.equals("compact") ? new CompactModel() : new LinkedHashModel();
+	}
+	
+	@Setup(Level.Trial)
+	public void setup(CorpusState c) throws IOException {
+		m = create();
+		for (File f: c.files) {
+			for (String lang: CorpusGenerator.LANGS) {
+				Main.processFile(new File(new File(c.dir, lang), f.getName()), m);
+			}
+		}
+	}
+	
+	@Benchmark
+	public Model copy() {
+		Model copy = create();
+		copy.addAll(m);
+		return copy;
+	}
+	
+	@Benchmark
+	public int frameworkTitles() {
+		int titles = 0;
+		for (Resource fw: m.filter(null, RDF.TYPE, CPSV.CLASS_FRAMEWORK).subjects()) {
+			titles += m.filter(fw, DCTERMS.TITLE, null).objects().size();
+		}
+		return titles;
+	}
+}
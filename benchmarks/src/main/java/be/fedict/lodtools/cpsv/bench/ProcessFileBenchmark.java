@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.bench;
+
+import be.fedict.lodtools.cpsv.CorpusGenerator;
+import be.fedict.lodtools.cpsv.Main;
+import be.fedict.lodtools.cpsv.ProcedureCache;
+import be.fedict.lodtools.cpsv.input.DirectorySource;
+import be.fedict.lodtools.cpsv.proj.ProcedureProjection;
+import be.fedict.lodtools.cpsv.stax.StaxProcedureReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.xmlbeam.XBProjector;
+
+/**
+ * Parsing and converting a single procedure file.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ProcessFileBenchmark {
+	private final XBProjector proj = new XBProjector();
+	private int next = 0;
+	
+	/**
+	 * Procedure cache, filled with all files of the corpus
+	 */
+	@State(Scope.Benchmark)
+	public static class CacheState {
+		private File dir;
+		private DirectorySource src;
+		private ProcedureCache cache;
+		
+		@Setup(Level.Trial)
+		public void setup(CorpusState c) throws IOException {
+			dir = Files.createTempDirectory("cpsv-cache").toFile();
+			src = new DirectorySource(c.dir, DirectorySource.Mode.STREAM);
+			try (ProcedureCache fill = new ProcedureCache(dir)) {
+				for (String lang: CorpusGenerator.LANGS) {
+					for (File f: c.files) {
+						fill.read(src, lang, f.getName());
+					}
+				}
+			}
+			cache = new ProcedureCache(dir);
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			cache.close();
+			src.close();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+	
+	/**
+	 * Get the next file of the corpus, in the next language
+	 * 
+	 * @param c corpus
+	 * @return file
+	 */
+	private File nextFile(CorpusState c) {
+		int i = next++;
+		String lang = CorpusGenerator.LANGS[i % CorpusGenerator.LANGS.length];
+		String name = c.files[(i / CorpusGenerator.LANGS.length) % c.files.length].getName();
+		return new File(new File(c.dir, lang), name);
+	}
+	
+	@Benchmark
+	public Model processFile(CorpusState c) throws IOException {
+		Model m = new LinkedHashModel();
+		Main.processFile(nextFile(c), m);
+		return m;
+	}
+	
+	@Benchmark
+	public void readXMLBeam(CorpusState c, Blackhole bh) throws IOException {
+		ProcedureProjection p = proj.io().file(nextFile(c)).read(ProcedureProjection.class);
+		bh.consume(p.getTitle());
+		bh.consume(p.getCities().size());
+		bh.consume(p.getActivities());
+		bh.consume(p.getLegal());
+		bh.consume(p.getResponsible().getAddress().getStreet());
+	}
+	
+	@Benchmark
+	public void readStax(CorpusState c, Blackhole bh) throws IOException {
+		ProcedureProjection p = StaxProcedureReader.read(nextFile(c));
+		bh.consume(p.getTitle());
+		bh.consume(p.getCities().size());
+		bh.consume(p.getActivities());
+		bh.consume(p.getLegal());
+		bh.consume(p.getResponsible().getAddress().getStreet());
+	}
+	
+	@Benchmark
+	public void readCached(CorpusState c, CacheState cs, Blackhole bh) throws IOException {
+		File f = nextFile(c);
+		ProcedureProjection p = cs.cache.read(cs.src, f.getParentFile().getName(), f.getName());
+		bh.consume(p.getTitle());
+		bh.consume(p.getCities().size());
+		bh.consume(p.getActivities());
+		bh.consume(p.getLegal());
+		bh.consume(p.getResponsible().getAddress().getStreet());
+	}
+}
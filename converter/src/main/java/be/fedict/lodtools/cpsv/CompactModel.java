@@ -0,0 +1,516 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.AbstractModel;
+import org.eclipse.rdf4j.model.impl.FilteredModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+
+/**
+ * Memory efficient RDF model, replacing LinkedHashModel.
+ * 
+ * Each term is stored once in a dictionary and mapped to an int ID,
+ * triples are stored as three IDs in a single int array, in insertion order.
+ * Statement objects are only created when iterating.
+ * Indexes on subject, predicate and object are built when filtering, 
+ * and only rebuilt when triples were added since.
+ * 
+ * Only the default graph is supported. Not thread-safe.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class CompactModel extends AbstractModel {
+	private static final long serialVersionUID = 1L;
+	
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	
+	private final static int S = 0;
+	private final static int P = 1;
+	private final static int O = 2;
+	
+	private final Set<Namespace> namespaces = new LinkedHashSet<>();
+	
+	// dictionary: term ID + 1 in hash slots, 0 marks an empty slot
+	private Value[] terms;
+	private int[] termSlots;
+	private int termCount;
+	
+	// subject, predicate and object ID of each triple, subject -1 when removed
+	private int[] spo;
+	private int[] slots;
+	private int size;
+	private int removed;
+	
+	// changes on every addition, invalidates indexes and iterators
+	private int generation = 0;
+	
+	// per position: offset of each term ID in the sorted list of triples
+	private final int[][] offsets = new int[3][];
+	private final int[][] order = new int[3][];
+	private final int[] indexed = { -1, -1, -1 };
+	
+	/**
+	 * Spread bits of the hash code
+	 * 
+	 * @param h hash code
+	 * @param mask length of hash table minus one
+	 * @return index in hash table
+	 */
+	private static int index(int h, int mask) {
+		h *= 0x9e3779b9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+	
+	/**
+	 * Hash code of a triple
+	 * 
+	 * @param s subject ID
+	 * @param p predicate ID
+	 * @param o object ID
+	 * @return hash code
+	 */
+	private static int hash(int s, int p, int o) {
+		return (s * 31 + p) * 31 + o;
+	}
+	
+	/**
+	 * Get the ID of a term
+	 * 
+	 * @param v term
+	 * @return ID or -1 if not in the dictionary
+	 */
+	private int id(Value v) {
+		int mask = termSlots.length - 1;
+		for (int i = index(v.hashCode(), mask); termSlots[i] != 0; i = (i + 1) & mask) {
+			if (terms[termSlots[i] - 1].equals(v)) {
+				return termSlots[i] - 1;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Get the ID of a term, adding it to the dictionary if needed
+	 * 
+	 * @param v term
+	 * @return ID
+	 */
+	private int intern(Value v) {
+		int id = id(v);
+		if (id >= 0) {
+			return id;
+		}
+		if (termCount == terms.length) {
+			terms = Arrays.copyOf(terms, terms.length * 2);
+		}
+		// keep load factor below 0.5
+		if (termCount * 2 >= termSlots.length) {
+			termSlots = new int[termSlots.length * 2];
+			for (int t = 0; t < termCount; t++) {
+				putTerm(t);
+			}
+		}
+		terms[termCount] = v;
+		putTerm(termCount);
+		return termCount++;
+	}
+	
+	/**
+	 * Put term ID in a free hash slot
+	 * 
+	 * @param t term ID
+	 */
+	private void putTerm(int t) {
+		int mask = termSlots.length - 1;
+		int i = index(terms[t].hashCode(), mask);
+		while (termSlots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		termSlots[i] = t + 1;
+	}
+	
+	/**
+	 * Find a triple
+	 * 
+	 * @param s subject ID
+	 * @param p predicate ID
+	 * @param o object ID
+	 * @return position of the triple or -1 if not found
+	 */
+	private int find(int s, int p, int o) {
+		int mask = slots.length - 1;
+		for (int i = index(hash(s, p, o), mask); slots[i] != 0; i = (i + 1) & mask) {
+			int t = (slots[i] - 1) * 3;
+			if (spo[t] == s && spo[t + 1] == p && spo[t + 2] == o) {
+				return slots[i] - 1;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Put triple in a free hash slot.
+	 * Slots of removed triples are kept until the model is compacted.
+	 * 
+	 * @param n position of the triple
+	 */
+	private void putTriple(int n) {
+		int mask = slots.length - 1;
+		int t = n * 3;
+		int i = index(hash(spo[t], spo[t + 1], spo[t + 2]), mask);
+		while (slots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		slots[i] = n + 1;
+	}
+	
+	/**
+	 * Make room for a new triple, dropping removed triples or growing the arrays
+	 */
+	private void ensureCapacity() {
+		if (size * 3 < spo.length && (size + 1) * 2 <= slots.length) {
+			return;
+		}
+		if (removed * 2 >= size) {
+			int n = 0;
+			for (int t = 0; t < size * 3; t += 3) {
+				if (spo[t] >= 0) {
+					System.arraycopy(spo, t, spo, n * 3, 3);
+					n++;
+				}
+			}
+			size = n;
+			removed = 0;
+		}
+		if (size * 3 == spo.length) {
+			spo = Arrays.copyOf(spo, spo.length * 2);
+		}
+		// keep load factor below 0.5
+		if ((size + 1) * 2 > slots.length) {
+			slots = new int[slots.length * 2];
+		} else {
+			Arrays.fill(slots, 0);
+		}
+		for (int n = 0; n < size; n++) {
+			putTriple(n);
+		}
+		generation++;
+	}
+	
+	/**
+	 * Check if the contexts include the default graph
+	 * 
+	 * @param contexts contexts, empty means all contexts
+	 * @return true if statements in the default graph match
+	 */
+	private static boolean inDefault(Resource... contexts) {
+		if (contexts == null || contexts.length == 0) {
+			return true;
+		}
+		for (Resource c: contexts) {
+			if (c == null) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Build the index for a position, if not up-to-date.
+	 * The index is a list of triple positions, sorted by term ID.
+	 * 
+	 * @param pos subject, predicate or object
+	 */
+	private void index(int pos) {
+		if (indexed[pos] == generation) {
+			return;
+		}
+		int[] off = new int[termCount + 1];
+		for (int t = 0; t < size * 3; t += 3) {
+			if (spo[t] >= 0) {
+				off[spo[t + pos] + 1]++;
+			}
+		}
+		for (int i = 0; i < termCount; i++) {
+			off[i + 1] += off[i];
+		}
+		int[] next = Arrays.copyOf(off, termCount);
+		int[] ord = new int[size - removed];
+		for (int n = 0; n < size; n++) {
+			if (spo[n * 3] >= 0) {
+				ord[next[spo[n * 3 + pos]]++] = n;
+			}
+		}
+		offsets[pos] = off;
+		order[pos] = ord;
+		indexed[pos] = generation;
+	}
+	
+	// deprecated in Graph, but still the method used by AbstractModel in rdf4j 2.2
+	@SuppressWarnings("deprecation")
+	@Override
+	public Iterator<Statement> match(Resource subj, IRI pred, Value obj, Resource... contexts) {
+		if (!inDefault(contexts)) {
+			return Collections.emptyIterator();
+		}
+		int s = (subj != null) ? id(subj) : -1;
+		int p = (pred != null) ? id(pred) : -1;
+		int o = (obj != null) ? id(obj) : -1;
+		if ((subj != null && s < 0) || (pred != null && p < 0) || (obj != null && o < 0)) {
+			return Collections.emptyIterator();
+		}
+		
+		// use the most selective index, subject and object are usually more selective
+		if (s >= 0 && p >= 0 && o >= 0) {
+			int n = find(s, p, o);
+			return (n >= 0) ? new TripleIterator(new int[] { n }, 0, 1, s, p, o)
+							: Collections.emptyIterator();
+		}
+		int pos = (s >= 0) ? S : (o >= 0) ? O : (p >= 0) ? P : -1;
+		if (pos < 0) {
+			return new TripleIterator(null, 0, size, s, p, o);
+		}
+		index(pos);
+		int id = (pos == S) ? s : (pos == O) ? o : p;
+		return new TripleIterator(order[pos], offsets[pos][id], offsets[pos][id + 1], s, p, o);
+	}
+	
+	/**
+	 * Iterate over the triples in (part of) an index, or over all triples.
+	 */
+	private class TripleIterator implements Iterator<Statement> {
+		private final int[] ord;
+		private final int end;
+		private final int s;
+		private final int p;
+		private final int o;
+		private final int gen = generation;
+		
+		private int i;
+		private int next = -1;
+		private int last = -1;
+		
+		/**
+		 * Get position of the next matching triple
+		 * 
+		 * @return position or -1 
+		 */
+		private int advance() {
+			while (i < end) {
+				int n = (ord != null) ? ord[i] : i;
+				i++;
+				int t = n * 3;
+				if (spo[t] >= 0 && (s < 0 || spo[t] == s) && (p < 0 || spo[t + 1] == p) 
+												&& (o < 0 || spo[t + 2] == o)) {
+					return n;
+				}
+			}
+			return -1;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if (gen != generation) {
+				throw new ConcurrentModificationException();
+			}
+			if (next < 0) {
+				next = advance();
+			}
+			return next >= 0;
+		}
+
+		@Override
+		public Statement next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			last = next;
+			next = -1;
+			int t = last * 3;
+			return F.createStatement((Resource) terms[spo[t]], (IRI) terms[spo[t + 1]], 
+																terms[spo[t + 2]]);
+		}
+		
+		@Override
+		public void remove() {
+			if (last < 0 || spo[last * 3] < 0) {
+				throw new IllegalStateException();
+			}
+			if (gen != generation) {
+				throw new ConcurrentModificationException();
+			}
+			spo[last * 3] = -1;
+			removed++;
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param ord triple positions, or null to iterate over all triples
+		 * @param start start in the list of triples
+		 * @param end end (exclusive)
+		 * @param s subject ID or -1
+		 * @param p predicate ID or -1
+		 * @param o object ID or -1
+		 */
+		private TripleIterator(int[] ord, int start, int end, int s, int p, int o) {
+			this.ord = ord;
+			this.i = start;
+			this.end = end;
+			this.s = s;
+			this.p = p;
+			this.o = o;
+		}
+	}
+	
+	@Override
+	public Iterator<Statement> iterator() {
+		return match(null, null, null);
+	}
+	
+	@Override
+	public int size() {
+		return size - removed;
+	}
+	
+	@Override
+	public boolean add(Resource subj, IRI pred, Value obj, Resource... contexts) {
+		if (subj == null || pred == null || obj == null) {
+			throw new UnsupportedOperationException("Incomplete statement");
+		}
+		for (int i = 0; contexts != null && i < contexts.length; i++) {
+			if (contexts[i] != null) {
+				throw new UnsupportedOperationException("Named graphs are not supported");
+			}
+		}
+		int s = intern(subj);
+		int p = intern(pred);
+		int o = intern(obj);
+		if (find(s, p, o) >= 0) {
+			return false;
+		}
+		ensureCapacity();
+		int t = size * 3;
+		spo[t] = s;
+		spo[t + 1] = p;
+		spo[t + 2] = o;
+		putTriple(size);
+		size++;
+		generation++;
+		return true;
+	}
+	
+	@Override
+	public boolean contains(Resource subj, IRI pred, Value obj, Resource... contexts) {
+		return match(subj, pred, obj, contexts).hasNext();
+	}
+	
+	@Override
+	public boolean remove(Resource subj, IRI pred, Value obj, Resource... contexts) {
+		boolean changed = false;
+		for (Iterator<Statement> it = match(subj, pred, obj, contexts); it.hasNext(); ) {
+			it.next();
+			it.remove();
+			changed = true;
+		}
+		return changed;
+	}
+	
+	@Override
+	public void removeTermIteration(Iterator<Statement> iter, Resource subj, IRI pred, 
+												Value obj, Resource... contexts) {
+		remove(subj, pred, obj, contexts);
+	}
+	
+	@Override
+	public void clear() {
+		terms = new Value[64];
+		termSlots = new int[128];
+		termCount = 0;
+		spo = new int[3 * 64];
+		slots = new int[128];
+		size = 0;
+		removed = 0;
+		generation++;
+	}
+	
+	@Override
+	public Model filter(Resource subj, IRI pred, Value obj, Resource... contexts) {
+		return new FilteredModel(this, subj, pred, obj, contexts) {
+			@Override
+			public Iterator<Statement> iterator() {
+				return CompactModel.this.match(subj, pred, obj, contexts);
+			}
+
+			@Override
+			protected void removeFilteredTermIteration(Iterator<Statement> iter, 
+							Resource subj, IRI pred, Value obj, Resource... contexts) {
+				CompactModel.this.removeTermIteration(iter, subj, pred, obj, contexts);
+			}
+		};
+	}
+	
+	@Override
+	public Set<Namespace> getNamespaces() {
+		return namespaces;
+	}
+
+	@Override
+	public void setNamespace(Namespace ns) {
+		removeNamespace(ns.getPrefix());
+		namespaces.add(ns);
+	}
+
+	@Override
+	public Optional<Namespace> removeNamespace(String prefix) {
+		Optional<Namespace> ns = getNamespace(prefix);
+		ns.ifPresent(namespaces::remove);
+		return ns;
+	}
+	
+	/**
+	 * Constructor
+	 */
+	public CompactModel() {
+		clear();
+	}
+}
@@ -25,6 +25,13 @@
  */
 package be.fedict.lodtools.cpsv;
 
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
 import org.apache.commons.codec.digest.DigestUtils;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.ValueFactory;
@@ -42,7 +49,70 @@ public class ConvertUtil {
 	private final static Logger LOG = LoggerFactory.getLogger(ConvertUtil.class);
 		
 	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	
+	private final static int CACHE_SIZE = 10_000;
+	
+	private final static IriCache ORGS_BCE = new IriCache("org-bce", CACHE_SIZE);
+	private final static IriCache ORGS_CODE = new IriCache("org-code", CACHE_SIZE);
+	private final static IriCache SECTORS = new IriCache("sector", CACHE_SIZE);
+	private final static IriCache LANGS = new IriCache("lang", CACHE_SIZE);
+	private final static IriCache LIFECYCLES = new IriCache("lifecycle", CACHE_SIZE);
+	private final static IriCache ADDRS = new IriCache("addr", CACHE_SIZE);
+	private final static IriCache COSTS = new IriCache("cost-text", CACHE_SIZE);
+	
+	/**
+	 * Hash function for identifiers derived from longer texts
+	 */
+	public enum IdHash { 
+		/** 40 hex characters, compatible with IRIs created by previous versions */
+		SHA1, 
+		/** 32 hex characters, faster non-cryptographic hash */
+		MURMUR3;
 		
+		/**
+		 * Get hash function from name
+		 * 
+		 * @param name sha1 or murmur3
+		 * @return hash function
+		 */
+		public static IdHash get(String name) {
+			return valueOf(name.toUpperCase(Locale.ROOT));
+		}
+	}
+	
+	private static IdHash hash = IdHash.SHA1;
+	
+	/**
+	 * Set the hash function for address and cost identifiers.
+	 * Must be set before converting, since identifiers are cached.
+	 * 
+	 * @param h hash function
+	 */
+	public static void setIdHash(IdHash h) {
+		hash = h;
+	}
+	
+	/**
+	 * Hash a string into a stable hex encoded identifier
+	 * 
+	 * @param s string
+	 * @return hex encoded hash
+	 */
+	private static String hash(String s) {
+		return (hash == IdHash.MURMUR3) 
+				? Hashing.murmur3_128().hashString(s, StandardCharsets.UTF_8).toString()
+				: DigestUtils.sha1Hex(s);
+	}
+	
+	/**
+	 * Get statistics about the IRI caches
+	 * 
+	 * @return list of caches
+	 */
+	public static List<IriCache> getCaches() {
+		return Arrays.asList(ORGS_BCE, ORGS_CODE, SECTORS, LANGS, LIFECYCLES, ADDRS, COSTS);
+	}
+	
 	/**
 	 * Make ID for administration
 	 * 
@@ -52,13 +122,15 @@ public class ConvertUtil {
 	 */
 	public static IRI adminID(String bce, String code) {
 		if (bce != null && !bce.isEmpty()) {
-			String id = bce.substring(0, 4) + "_" + bce.substring(4, 7) 
-											+ "_" + bce.substring(7) + "#id";
-			return F.createIRI(Consts.ORG_BELGIF + id);
+			return ORGS_BCE.get(bce, k -> {
+				String id = k.substring(0, 4) + "_" + k.substring(4, 7) 
+											+ "_" + k.substring(7) + "#id";
+				return F.createIRI(Consts.ORG_BELGIF + id);
+			});
 		}
 		if (code != null && !code.isEmpty()) {
-			return F.createIRI(Consts.PUBSERV_BELGIF + "org/" + 
-											code.replaceAll(" ", "") + "#id");
+			return ORGS_CODE.get(code, k -> F.createIRI(Consts.PUBSERV_BELGIF + "org/" + 
+											k.replaceAll(" ", "") + "#id"));
 		}
 		return null;
 	}
@@ -71,13 +143,17 @@ public class ConvertUtil {
 	 * @return 
 	 */
 	public static IRI addrID(String mainCode, String subCode) {
-		return F.createIRI(Consts.PUBSERV_BELGIF + "addr/" 
-				+ DigestUtils.sha1Hex(mainCode + subCode) + "#id");
+		// same addresses are used by many procedures, avoid hashing them again
+		return ADDRS.get(mainCode + '\t' + subCode, k -> F.createIRI(Consts.PUBSERV_BELGIF 
+								+ "addr/" + hash(mainCode + subCode) + "#id"));
 	}
 	
 	/**
-	 * Create IRI identifier
+	 * Create IRI identifier.
+	 * Not cached, since these IDs (services, frameworks, inputs...) are unique
+	 * per procedure, the repeating ones have their own cache.
 	 * 
+	 * @param type type of the identifier
 	 * @param id short code
 	 * @return IRI
 	 */
@@ -93,8 +169,10 @@ public class ConvertUtil {
 	 * @return IRI
 	 */
 	public static IRI sectorID(String sector, String activity) {
-		return F.createIRI(Consts.PUBSERV_BELGIF + "sector/" 
-				+ sector.substring(0, 2) + "/" + activity.substring(0, 2).trim() + "#id");
+		// both codes are short, so the key is cheap to build
+		return SECTORS.get(sector + '\t' + activity, k -> 
+				F.createIRI(Consts.PUBSERV_BELGIF + "sector/" + sector.substring(0, 2) 
+								+ "/" + activity.substring(0, 2).trim() + "#id"));
 	}
 	
 	/**
@@ -104,9 +182,11 @@ public class ConvertUtil {
 	 * @return IRI
 	 */
 	public static IRI costID(String cost) {
-		// Try to map different wordings of "free" to the same IRI
-		String id = Consts.FREE.contains(cost) ? "zero" : DigestUtils.sha1Hex(cost);
-		return genericID("cost", id);
+		return COSTS.get(cost, k -> {
+			// Try to map different wordings of "free" to the same IRI
+			String id = Consts.FREE.contains(k) ? "zero" : hash(k);
+			return genericID("cost", id);
+		});
 	}
 	
 /**
@@ -116,14 +196,16 @@ public class ConvertUtil {
 	 * @return IRI
 	 */
 	public static IRI langID(String code) {
-		String term = "";
-		switch(code) {
-			case "NL": term = "NED"; break;
-			case "FR": term = "FRA"; break;
-			case "EN": term = "ENG"; break;
-			case "DE": term = "DEU"; break;
-		}
-		return F.createIRI(Consts.PREFIX_LANG + term);
+		return LANGS.get(code, k -> {
+			String term = "";
+			switch(k) {
+				case "NL": term = "NED"; break;
+				case "FR": term = "FRA"; break;
+				case "EN": term = "ENG"; break;
+				case "DE": term = "DEU"; break;
+			}
+			return F.createIRI(Consts.PREFIX_LANG + term);
+		});
 	}
 	
 	/**
@@ -133,16 +215,18 @@ public class ConvertUtil {
 	 * @return 
 	 */
 	public static IRI lifecycleID(String code) {
-		String term = "";
-		switch(code) {
-			case "START":
-			case "ACTIVE":
-			case "STOP":
-				term = code;
-				break;
-			default:
-				LOG.error("Event code not found {}", code);
-		}
-		return F.createIRI(Consts.PREFIX_LIFE + term + "#id");
+		return LIFECYCLES.get(code, k -> {
+			String term = "";
+			switch(k) {
+				case "START":
+				case "ACTIVE":
+				case "STOP":
+					term = k;
+					break;
+				default:
+					LOG.error("Event code not found {}", k);
+			}
+			return F.createIRI(Consts.PREFIX_LIFE + term + "#id");
+		});
 	}
 }
\ No newline at end of file
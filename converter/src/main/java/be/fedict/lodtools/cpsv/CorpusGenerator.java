@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generate a synthetic EDRL export for scale testing and benchmarks.
+ * 
+ * Procedures are written in the NL/FR/EN/DE directory layout, with 
+ * municipalities using the Belgian NIS code ranges.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class CorpusGenerator {
+	private final static Logger LOG = LoggerFactory.getLogger(CorpusGenerator.class);
+	
+	public final static String[] LANGS = new String[]{ "NL", "FR", "EN", "DE" };
+	
+	private final static XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+	
+	// NIS codes of the municipalities of the German-speaking community
+	private final static int[] NIS_GER = new int[]{ 
+		63001, 63012, 63013, 63023, 63040, 63048, 63061, 63067, 63087 };
+	// NIS prefixes (district) per region, number of municipalities per region
+	private final static int[] PREFIX_VLA = new int[]{ 
+		11, 12, 13, 23, 24, 31, 32, 33, 34, 35, 36, 37, 38, 41, 42, 43, 44, 45, 46, 71, 72, 73 };
+	private final static int[] PREFIX_WAL = new int[]{ 
+		25, 51, 52, 53, 55, 56, 57, 58, 61, 62, 63, 64, 81, 82, 83, 84, 85, 91, 92, 93 };
+	
+	private final static String[][] MONTHS = new String[][]{ 
+		{ "januari", "februari", "maart", "april", "mei", "juni", "juli",
+			"augustus", "september", "oktober", "november", "december" },
+		{ "janvier", "février", "mars", "avril", "mai", "juin", "juillet",
+			"août", "septembre", "octobre", "novembre", "décembre" }};
+	private final static String[] PRICES = new String[]{ 
+		"<div>Gratis</div>", "<div>Gratuit</div>", "<div>0 euro</div>" };
+	private final static String[] LIFECYCLE = new String[]{ "START", "ACTIVE", "STOP" };
+	
+	private final List<String> brussels = new ArrayList<>();
+	private final List<String> flanders = new ArrayList<>();
+	private final List<String> wallonia = new ArrayList<>();
+	private final List<String> german = new ArrayList<>();
+	
+	private int procedures = 100;
+	private int municipalities = 0;
+	private int activities = 3;
+	private int legal = 3;
+	private int forms = 2;
+	private int addresses = 100;
+	private int laws = 200;
+	private long seed = 42;
+	
+	/**
+	 * Set number of procedures
+	 * 
+	 * @param n number
+	 * @return this generator
+	 */
+	public CorpusGenerator procedures(int n) {
+		procedures = n;
+		return this;
+	}
+	
+	/**
+	 * Set number of municipalities per procedure.
+	 * The default, 0, uses complete regions (Brussels, Flanders, Wallonia...)
+	 * 
+	 * @param n number, 0 for complete regions
+	 * @return this generator
+	 */
+	public CorpusGenerator municipalities(int n) {
+		municipalities = n;
+		return this;
+	}
+	
+	/**
+	 * Set maximum number of activities per procedure
+	 * 
+	 * @param n number
+	 * @return this generator
+	 */
+	public CorpusGenerator activities(int n) {
+		activities = n;
+		return this;
+	}
+	
+	/**
+	 * Set maximum number of legal base links per procedure
+	 * 
+	 * @param n number
+	 * @return this generator
+	 */
+	public CorpusGenerator legal(int n) {
+		legal = n;
+		return this;
+	}
+	
+	/**
+	 * Set maximum number of forms per procedure
+	 * 
+	 * @param n number
+	 * @return this generator
+	 */
+	public CorpusGenerator forms(int n) {
+		forms = n;
+		return this;
+	}
+	
+	/**
+	 * Set number of distinct administrations and addresses
+	 * 
+	 * @param n number
+	 * @return this generator
+	 */
+	public CorpusGenerator addresses(int n) {
+		addresses = n;
+		return this;
+	}
+	
+	/**
+	 * Set number of distinct laws used as legal base
+	 * 
+	 * @param n number
+	 * @return this generator
+	 */
+	public CorpusGenerator laws(int n) {
+		laws = n;
+		return this;
+	}
+	
+	/**
+	 * Set random seed
+	 * 
+	 * @param s seed
+	 * @return this generator
+	 */
+	public CorpusGenerator seed(long s) {
+		seed = s;
+		return this;
+	}
+	
+	/**
+	 * Fill list with NIS codes, distributed over the districts
+	 * 
+	 * @param lst list to fill
+	 * @param prefixes district prefixes
+	 * @param count number of codes
+	 */
+	private static void fill(List<String> lst, int[] prefixes, int count) {
+		for (int i = 0; i < count; i++) {
+			int prefix = prefixes[i % prefixes.length];
+			int code = prefix * 1000 + 1 + (i / prefixes.length);
+			if (prefix == 63) {
+				// skip codes of the German-speaking community
+				code += 100;
+			}
+			lst.add(String.valueOf(code));
+		}
+	}
+	
+	/**
+	 * Select the municipalities for a procedure
+	 * 
+	 * @param rnd random generator
+	 * @return list of NIS codes
+	 */
+	private List<String> cities(Random rnd) {
+		List<String> lst = new ArrayList<>();
+		if (municipalities > 0) {
+			List<String> all = new ArrayList<>();
+			all.addAll(flanders);
+			all.addAll(brussels);
+			all.addAll(wallonia);
+			all.addAll(german);
+			Collections.shuffle(all, rnd);
+			lst.addAll(all.subList(0, Math.min(municipalities, all.size())));
+			return lst;
+		}
+		switch (rnd.nextInt(8)) {
+			case 0: lst.addAll(german); break;
+			case 1: lst.addAll(brussels); break;
+			case 2: lst.addAll(wallonia); break;
+			case 3: lst.addAll(wallonia); lst.addAll(german); break;
+			case 4: lst.addAll(flanders); break;
+			case 5: lst.addAll(brussels); lst.addAll(flanders); break;
+			case 6: lst.addAll(brussels); lst.addAll(wallonia); lst.addAll(german); break;
+			default: 
+				lst.addAll(flanders); lst.addAll(brussels); 
+				lst.addAll(wallonia); lst.addAll(german);
+		}
+		return lst;
+	}
+	
+	/**
+	 * Get the title of a law in a given language
+	 * 
+	 * @param law law number
+	 * @param lang language code
+	 * @return title
+	 */
+	private static String law(int law, String lang) {
+		Random rnd = new Random(law);
+		int day = 1 + rnd.nextInt(28);
+		int month = rnd.nextInt(12);
+		int year = 1950 + rnd.nextInt(68);
+		boolean decree = rnd.nextInt(4) == 0;
+		switch (lang) {
+			case "NL": 
+				return (decree ? "Decreet" : "Wet") + " van " + day + " " 
+					+ MONTHS[0][month] + " " + year + " betreffende onderwerp " + law;
+			case "FR": 
+				return (decree ? "Décret" : "Loi") + " du " + day + " " 
+					+ MONTHS[1][month] + " " + year + " relative au sujet " + law;
+			default: 
+				return "Law " + law + " of " + year;
+		}
+	}
+	
+	/**
+	 * Write an element with text
+	 * 
+	 * @param w XML writer
+	 * @param name element name
+	 * @param val text
+	 * @throws XMLStreamException 
+	 */
+	private static void elem(XMLStreamWriter w, String name, String val) 
+														throws XMLStreamException {
+		w.writeStartElement(name);
+		w.writeCharacters(val);
+		w.writeEndElement();
+	}
+	
+	/**
+	 * Write link elements
+	 * 
+	 * @param w XML writer
+	 * @param url URL
+	 * @param desc description
+	 * @throws XMLStreamException 
+	 */
+	private static void link(XMLStreamWriter w, String url, String desc) 
+														throws XMLStreamException {
+		w.writeStartElement("fedict.edrl.domain.Link");
+		elem(w, "url", url);
+		elem(w, "description", desc);
+		w.writeEndElement();
+	}
+	
+	/**
+	 * Write one language variant of a procedure
+	 * 
+	 * @param out output stream
+	 * @param id procedure ID
+	 * @param lang language code
+	 * @param rnd random generator, seeded per procedure
+	 * @throws XMLStreamException 
+	 */
+	private void write(OutputStream out, int id, String lang, Random rnd) 
+														throws XMLStreamException {
+		XMLStreamWriter w = FACTORY.createXMLStreamWriter(out, "UTF-8");
+		w.writeStartDocument("UTF-8", "1.0");
+		w.writeStartElement("fedict.edrl.domain.Procedure");
+		elem(w, "contentId", String.valueOf(100000 + id));
+		elem(w, "language", lang);
+		elem(w, "lifecycle", LIFECYCLE[rnd.nextInt(LIFECYCLE.length)]);
+		elem(w, "title", "Procedure " + id + " (" + lang + ")");
+		elem(w, "shortDescription", "<p>Description of <b>procedure</b> " + id + "</p>");
+		elem(w, "applicationSummary", "<ul><li>Step 1</li><li>Step 2</li></ul>");
+		elem(w, "applicableTo", "<p>Companies</p>");
+		elem(w, "applicableExceptions", "<p>None</p>");
+		
+		w.writeStartElement("forms");
+		int nforms = rnd.nextInt(forms + 1);
+		for (int i = 1; i <= nforms; i++) {
+			link(w, "http://www.example.be/" + lang.toLowerCase() + "/form/" + id + "/" + i,
+				"<p>Form " + i + " &amp; annex</p>");
+		}
+		w.writeEndElement();
+		
+		w.writeStartElement("legalBases");
+		int nlegal = rnd.nextInt(legal + 1);
+		for (int i = 1; i <= nlegal; i++) {
+			int law = rnd.nextInt(laws);
+			link(w, "http://www.ejustice.just.fgov.be/law/" + law, law(law, lang));
+		}
+		w.writeEndElement();
+		
+		int addr = rnd.nextInt(addresses);
+		w.writeStartElement("responsibleAdministration");
+		w.writeStartElement("municipalities");
+		for (String nis: cities(rnd)) {
+			w.writeStartElement("fedict.edrl.domain.Municipality");
+			elem(w, "nisCode", nis);
+			elem(w, "postCode", String.valueOf(1000 + Integer.parseInt(nis) % 9000));
+			elem(w, "name", "Municipality " + nis);
+			w.writeEndElement();
+		}
+		w.writeEndElement();
+		w.writeStartElement("administration");
+		elem(w, "code", "ADM " + addr);
+		elem(w, "name", "Administration " + addr + " (" + lang + ")");
+		elem(w, "companyNumber", (addr % 3 == 0) ? "" : String.format("0%09d", 200000000 + addr));
+		elem(w, "politicalLevelCode", "FED");
+		w.writeEndElement();
+		w.writeStartElement("address");
+		w.writeStartElement("addressId");
+		elem(w, "mainCode", String.valueOf(addr));
+		elem(w, "subCode", "0");
+		w.writeEndElement();
+		elem(w, "postcode", "1000");
+		elem(w, "municipality", "Brussel");
+		elem(w, "street", "Wetstraat");
+		elem(w, "number", String.valueOf(1 + addr));
+		w.writeEndElement();
+		w.writeEndElement();
+		
+		elem(w, "frequency", rnd.nextBoolean() ? "" : "Yearly");
+		int price = rnd.nextInt(4);
+		elem(w, "price", (price < PRICES.length) ? PRICES[price] 
+									: "<div>" + (5 * (1 + id % 20)) + " euro</div>");
+		
+		w.writeStartElement("commonActivities");
+		int nact = rnd.nextInt(activities + 1);
+		for (int i = 0; i < nact; i++) {
+			w.writeStartElement("fedict.edrl.domain.Activity");
+			elem(w, "activityCode", String.format("%02d", 10 + rnd.nextInt(90)));
+			elem(w, "sectorCode", String.format("%02d", 1 + rnd.nextInt(99)));
+			elem(w, "language", lang);
+			w.writeEndElement();
+		}
+		w.writeEndElement();
+		
+		w.writeEndElement();
+		w.writeEndDocument();
+		w.close();
+	}
+	
+	/**
+	 * Write the corpus
+	 * 
+	 * @param dir output directory
+	 * @throws IOException 
+	 */
+	public void write(File dir) throws IOException {
+		for (String lang: LANGS) {
+			Files.createDirectories(new File(dir, lang).toPath());
+		}
+		for (int id = 0; id < procedures; id++) {
+			String name = "procedure" + id + ".xml";
+			for (String lang: LANGS) {
+				// same choices for every language variant
+				Random rnd = new Random(seed * 31 + id);
+				File f = new File(new File(dir, lang), name);
+				try (OutputStream out = Files.newOutputStream(f.toPath())) {
+					write(out, id, lang, rnd);
+				} catch (XMLStreamException ex) {
+					throw new IOException(ex);
+				}
+			}
+		}
+		LOG.info("Wrote {} procedures to {}", procedures, dir);
+	}
+	
+	/**
+	 * Constructor
+	 */
+	public CorpusGenerator() {
+		for (int i = 1; i <= 19; i++) {
+			brussels.add(String.valueOf(21000 + i));
+		}
+		fill(flanders, PREFIX_VLA, 308);
+		fill(wallonia, PREFIX_WAL, 253);
+		for (int nis: NIS_GER) {
+			german.add(String.valueOf(nis));
+		}
+	}
+	
+	/**
+	 * Main
+	 * 
+	 * @param args
+	 * @throws IOException 
+	 */
+	public static void main(String[] args) throws IOException {
+		Options opts = Options.parse(args);
+		if (opts.count() < 1) {
+			System.out.println("Usage: generator <output_dir> [--procedures=N]"
+				+ " [--municipalities=N] [--activities=N] [--legal=N] [--forms=N]"
+				+ " [--addresses=N] [--laws=N] [--seed=N]");
+			System.exit(-1);
+		}
+		new CorpusGenerator().procedures(opts.getInt("procedures", 100))
+							.municipalities(opts.getInt("municipalities", 0))
+							.activities(opts.getInt("activities", 3))
+							.legal(opts.getInt("legal", 3))
+							.forms(opts.getInt("forms", 2))
+							.addresses(opts.getInt("addresses", 100))
+							.laws(opts.getInt("laws", 200))
+							.seed(opts.getInt("seed", 42))
+							.write(new File(opts.arg(0)));
+	}
+}
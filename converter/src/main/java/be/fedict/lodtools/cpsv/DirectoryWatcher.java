@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watch the language directories of the input for new, modified or deleted
+ * procedure files.
+ * 
+ * Changes are collected until the directories have been quiet for a while,
+ * since the export of the EDRL back office writes many files at once.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class DirectoryWatcher implements AutoCloseable {
+	private final static Logger LOG = LoggerFactory.getLogger(DirectoryWatcher.class);
+	
+	private final WatchService ws;
+	private final long quiet;
+	
+	/**
+	 * Callback for a set of changes
+	 */
+	public interface ChangeHandler {
+		/**
+		 * Handle changed procedures
+		 * 
+		 * @param names file names of changed procedures, or null if unknown
+		 * @throws IOException 
+		 */
+		void changed(Set<String> names) throws IOException;
+	}
+	
+	/**
+	 * Add the file names of the events of a watch key to a set of names
+	 * 
+	 * @param key watch key
+	 * @param names set of names, or null when all files must be checked
+	 * @return set of names, or null when all files must be checked
+	 */
+	private static Set<String> collect(WatchKey key, Set<String> names) {
+		for (WatchEvent<?> ev: key.pollEvents()) {
+			if (ev.kind() == StandardWatchEventKinds.OVERFLOW) {
+				LOG.warn("Too many changes, checking all files");
+				names = null;
+			} else if (names != null) {
+				names.add(((Path) ev.context()).getFileName().toString());
+			}
+		}
+		if (!key.reset()) {
+			LOG.error("Directory {} is no longer watched", key.watchable());
+		}
+		return names;
+	}
+	
+	/**
+	 * Wait for changes and pass them to the handler, until the watcher is closed.
+	 * Errors in the handler are logged, and the watcher continues.
+	 * 
+	 * @param h change handler
+	 * @throws InterruptedException 
+	 */
+	public void run(ChangeHandler h) throws InterruptedException {
+		try {
+			while (true) {
+				Set<String> names = collect(ws.take(), new HashSet<>());
+				WatchKey key;
+				while ((key = ws.poll(quiet, TimeUnit.MILLISECONDS)) != null) {
+					names = collect(key, names);
+				}
+				if (names != null && names.isEmpty()) {
+					continue;
+				}
+				LOG.info("Changes detected in {} files", names != null ? names.size() : "all");
+				try {
+					h.changed(names);
+				} catch (IOException | RuntimeException ex) {
+					LOG.error("Conversion failed, keeping previous output", ex);
+				}
+			}
+		} catch (ClosedWatchServiceException ex) {
+			LOG.info("Stopped watching");
+		}
+	}
+	
+	/**
+	 * Stop watching, can be called from another thread.
+	 * 
+	 * @throws IOException 
+	 */
+	public void stop() throws IOException {
+		ws.close();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		stop();
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param base base input directory
+	 * @param langs language subdirectories
+	 * @param quiet quiet period in milliseconds
+	 * @throws IOException 
+	 */
+	public DirectoryWatcher(File base, String[] langs, long quiet) throws IOException {
+		this.ws = FileSystems.getDefault().newWatchService();
+		this.quiet = quiet;
+		
+		for (String lang: langs) {
+			Path p = new File(base, lang).toPath();
+			p.register(ws, StandardWatchEventKinds.ENTRY_CREATE, 
+							StandardWatchEventKinds.ENTRY_MODIFY,
+							StandardWatchEventKinds.ENTRY_DELETE);
+			LOG.info("Watching {}", p);
+		}
+	}
+}
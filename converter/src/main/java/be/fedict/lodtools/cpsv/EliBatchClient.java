@@ -0,0 +1,631 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+/**
+ * Send a batch of ELI lookups as pipelined HTTP/1.1 requests over one
+ * keep-alive connection: requests are written ahead as long as the throttle
+ * allows it, and the responses are read in the same order.
+ * If the server closes the connection, the remaining requests are sent again 
+ * on a new connection.
+ * Interim (1xx) responses are skipped, redirects are followed on a separate
+ * connection.
+ * When a proxy is configured for the ELI service, the requests are sent one
+ * by one using {@link HttpURLConnection} instead.
+ * 
+ * Only the subjects of the N-Triples responses are needed, so these are 
+ * scanned directly from the response instead of building an RDF model.
+ * Lines that are not valid N-Triples are skipped, and responses with another
+ * content type are treated as a miss.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class EliBatchClient {
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	private final static int BUFSIZE = 16 * 1024;
+	private final static int MAX_REDIRECTS = 5;
+	
+	private final String host;
+	private final int port;
+	private final boolean ssl;
+	private final String path;
+	private final String accept;
+	private final int timeout;
+	
+	/**
+	 * Callback for each response
+	 */
+	public interface ResponseHandler {
+		/**
+		 * Handle the response of one lookup
+		 * 
+		 * @param key lookup key
+		 * @param status HTTP status code
+		 * @param iris subjects found in the response, empty if status is not 200
+		 */
+		void handle(EliKey key, int status, Set<IRI> iris);
+	}
+	
+	/**
+	 * Limit the rate of requests
+	 */
+	public interface Throttle {
+		/**
+		 * Wait until a request is allowed
+		 */
+		void acquire();
+		
+		/**
+		 * Check if a request is allowed without waiting
+		 * 
+		 * @return true if the request can be sent now
+		 */
+		boolean tryAcquire();
+	}
+	
+	/**
+	 * No rate limit
+	 */
+	public final static Throttle UNLIMITED = new Throttle() {
+		@Override
+		public void acquire() {
+		}
+		
+		@Override
+		public boolean tryAcquire() {
+			return true;
+		}
+	};
+	
+	/**
+	 * Status and headers of a response
+	 */
+	private static class Response {
+		private int status;
+		private long length = -1;
+		private boolean chunked = false;
+		private boolean keepAlive = false;
+		private String location = null;
+		private String type = null;
+		private byte[] body;
+	}
+	
+	/**
+	 * Unescape \\u and \\U escapes in an N-Triples IRI
+	 * 
+	 * @param s escaped IRI
+	 * @return unescaped IRI
+	 */
+	private static String unescape(String s) {
+		if (s.indexOf('\\') < 0) {
+			return s;
+		}
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			int len = (c == '\\' && i + 1 < s.length()) 
+						? (s.charAt(i + 1) == 'u' ? 4 : s.charAt(i + 1) == 'U' ? 8 : 0) : 0;
+			if (len > 0 && i + 2 + len <= s.length()) {
+				sb.appendCodePoint(Integer.parseInt(s.substring(i + 2, i + 2 + len), 16));
+				i += 1 + len;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Read the subject IRIs from an N-Triples document.
+	 * Blank nodes and comments are skipped.
+	 * 
+	 * @param in (buffered) input stream
+	 * @return set of IRIs
+	 * @throws IOException 
+	 */
+	public static Set<IRI> subjects(InputStream in) throws IOException {
+		Set<IRI> iris = new HashSet<>();
+		ByteArrayOutputStream iri = new ByteArrayOutputStream(128);
+		// 0: start of line, 1: in subject IRI, 2: rest of the line
+		int state = 0;
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c == '\n' || c == '\r') {
+				state = 0;
+			} else if (state == 0) {
+				if (c == '<') {
+					iri.reset();
+					state = 1;
+				} else if (c != ' ' && c != '\t') {
+					state = 2;
+				}
+			} else if (state == 1) {
+				if (c == '>') {
+					String s = new String(iri.toByteArray(), StandardCharsets.UTF_8);
+					try {
+						iris.add(F.createIRI(unescape(s)));
+					} catch (IllegalArgumentException ex) {
+						// not an N-Triples statement, e.g. an HTML error page
+					}
+					state = 2;
+				} else {
+					iri.write(c);
+				}
+			}
+		}
+		return iris;
+	}
+	
+	/**
+	 * Read a CRLF terminated line
+	 * 
+	 * @param in input stream
+	 * @return line without CRLF, or null at end of stream
+	 * @throws IOException 
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder(64);
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c == -1) {
+				return (sb.length() > 0) ? sb.toString() : null;
+			}
+			if (c != '\r') {
+				sb.append((char) c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Read exactly len bytes
+	 * 
+	 * @param in input stream
+	 * @param out output buffer
+	 * @param len number of bytes
+	 * @throws IOException 
+	 */
+	private static void copy(InputStream in, ByteArrayOutputStream out, long len) 
+															throws IOException {
+		byte[] buf = new byte[BUFSIZE];
+		while (len > 0) {
+			int n = in.read(buf, 0, (int) Math.min(buf.length, len));
+			if (n < 0) {
+				throw new EOFException("Response truncated");
+			}
+			out.write(buf, 0, n);
+			len -= n;
+		}
+	}
+	
+	/**
+	 * Read status line and headers.
+	 * Interim responses (1xx) are skipped.
+	 * 
+	 * @param in input stream
+	 * @return final response
+	 * @throws IOException 
+	 */
+	private static Response readHeaders(InputStream in) throws IOException {
+		Response r;
+		do {
+			String line = readLine(in);
+			if (line == null) {
+				throw new EOFException("Connection closed");
+			}
+			String[] parts = line.split(" ", 3);
+			if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+				throw new IOException("Invalid status line " + line);
+			}
+			r = new Response();
+			r.status = Integer.parseInt(parts[1]);
+			r.keepAlive = parts[0].equals("HTTP/1.1");
+
+			while ((line = readLine(in)) != null && !line.isEmpty()) {
+				int colon = line.indexOf(':');
+				if (colon < 0) {
+					continue;
+				}
+				String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+				String value = line.substring(colon + 1).trim();
+				String lower = value.toLowerCase(Locale.ROOT);
+				switch(name) {
+					case "content-length":
+						r.length = Long.parseLong(value);
+						break;
+					case "transfer-encoding":
+						r.chunked = lower.contains("chunked");
+						break;
+					case "connection":
+						r.keepAlive = lower.contains("keep-alive") 
+										|| (r.keepAlive && !lower.contains("close"));
+						break;
+					case "location":
+						r.location = value;
+						break;
+					case "content-type":
+						r.type = value;
+						break;
+				}
+			}
+		} while (r.status >= 100 && r.status < 200);
+		return r;
+	}
+	
+	/**
+	 * Check if the content type of a response is N-Triples
+	 * 
+	 * @param type content type, may be null
+	 * @return false if the type is known and not N-Triples
+	 */
+	static boolean isNTriples(String type) {
+		if (type == null) {
+			return true;
+		}
+		int semi = type.indexOf(';');
+		String mime = (semi < 0 ? type : type.substring(0, semi)).trim();
+		return RDFFormat.NTRIPLES.hasMIMEType(mime);
+	}
+	
+	/**
+	 * Get the IRIs of a response
+	 * 
+	 * @param r response
+	 * @return set of subject IRIs, empty if not found or not N-Triples
+	 * @throws IOException 
+	 */
+	private static Set<IRI> subjects(Response r) throws IOException {
+		if (r.status != 200 || !isNTriples(r.type)) {
+			return new HashSet<>();
+		}
+		return subjects(new ByteArrayInputStream(r.body));
+	}
+	
+	/**
+	 * Check if the response is a redirect that can be followed
+	 * 
+	 * @param r response
+	 * @return true if redirected
+	 */
+	private static boolean isRedirect(Response r) {
+		return r.location != null && (r.status == 301 || r.status == 302 
+					|| r.status == 303 || r.status == 307 || r.status == 308);
+	}
+	
+	/**
+	 * Read the body of a response
+	 * 
+	 * @param in input stream
+	 * @param r response
+	 * @return body
+	 * @throws IOException 
+	 */
+	private static byte[] readBody(InputStream in, Response r) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		if (r.status == 204 || r.status == 304 || (r.status >= 100 && r.status < 200)) {
+			return body.toByteArray();
+		}
+		if (r.chunked) {
+			long len;
+			do {
+				String line = readLine(in);
+				if (line == null) {
+					throw new EOFException("Response truncated");
+				}
+				int ext = line.indexOf(';');
+				len = Long.parseLong((ext < 0 ? line : line.substring(0, ext)).trim(), 16);
+				if (len > 0) {
+					copy(in, body, len);
+					readLine(in);
+				}
+			} while (len > 0);
+			// skip trailer fields, up to the empty line ending the response
+			String line;
+			while ((line = readLine(in)) != null && !line.isEmpty()) {
+				// trailers are not used
+			}
+		} else if (r.length >= 0) {
+			copy(in, body, r.length);
+		} else {
+			// no length, body ends when the connection is closed
+			byte[] buf = new byte[BUFSIZE];
+			for (int n; (n = in.read(buf)) > 0; ) {
+				body.write(buf, 0, n);
+			}
+			r.keepAlive = false;
+		}
+		return body.toByteArray();
+	}
+	
+	/**
+	 * Open a connection to the ELI service
+	 * 
+	 * @return socket
+	 * @throws IOException 
+	 */
+	private Socket connect() throws IOException {
+		Socket s;
+		if (ssl) {
+			SSLSocket ss = (SSLSocket) SSLSocketFactory.getDefault().createSocket();
+			SSLParameters params = ss.getSSLParameters();
+			params.setEndpointIdentificationAlgorithm("HTTPS");
+			ss.setSSLParameters(params);
+			s = ss;
+		} else {
+			s = new Socket();
+		}
+		s.connect(new InetSocketAddress(host, port), timeout);
+		s.setSoTimeout(timeout);
+		s.setTcpNoDelay(true);
+		Metrics.counter("eli.connections").inc();
+		return s;
+	}
+	
+	/**
+	 * Get the request target (path and query) for one lookup
+	 * 
+	 * @param key lookup key
+	 * @return request target
+	 * @throws IOException 
+	 */
+	private String target(EliKey key) throws IOException {
+		String enc = URLEncoder.encode(key.getTitle(), StandardCharsets.UTF_8.toString());
+		return path + MessageFormat.format(EliMatcher.ELI, key.getDate(), key.getType(), enc);
+	}
+	
+	/**
+	 * Write the request for one lookup
+	 * 
+	 * @param out output stream
+	 * @param key lookup key
+	 * @throws IOException 
+	 */
+	private void writeRequest(OutputStream out, EliKey key) throws IOException {
+		String req = "GET " + target(key) + " HTTP/1.1\r\n"
+					+ "Host: " + host + (port != (ssl ? 443 : 80) ? ":" + port : "") + "\r\n"
+					+ "Accept: " + accept + "\r\n"
+					+ "\r\n";
+		out.write(req.getBytes(StandardCharsets.US_ASCII));
+	}
+	
+	/**
+	 * Follow a redirect on a separate connection, until a final response
+	 * 
+	 * @param r redirect response
+	 * @param key lookup key
+	 * @param throttle rate limiter
+	 * @return final response
+	 * @throws IOException 
+	 */
+	private Response follow(Response r, EliKey key, Throttle throttle) throws IOException {
+		URL u = new URL(url(key), r.location);
+		Metrics.counter("eli.redirects").inc();
+		return fetch(u, throttle, MAX_REDIRECTS - 1);
+	}
+	
+	/**
+	 * Send one request using a URL connection, which also uses the proxy
+	 * settings of the JVM. Redirects are followed.
+	 * 
+	 * @param u URL
+	 * @param throttle rate limiter
+	 * @param redirects maximum number of redirects to follow
+	 * @return final response
+	 * @throws IOException 
+	 */
+	private Response fetch(URL u, Throttle throttle, int redirects) throws IOException {
+		for (int i = 0; ; i++) {
+			throttle.acquire();
+			HttpURLConnection conn = (HttpURLConnection) u.openConnection();
+			conn.setInstanceFollowRedirects(false);
+			conn.setConnectTimeout(timeout);
+			conn.setReadTimeout(timeout);
+			conn.setRequestProperty("Accept", accept);
+			
+			Response r = new Response();
+			r.status = conn.getResponseCode();
+			r.location = conn.getHeaderField("Location");
+			r.type = conn.getContentType();
+			InputStream in = (r.status < 400) ? conn.getInputStream() : conn.getErrorStream();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			if (in != null) {
+				try (InputStream is = in) {
+					byte[] buf = new byte[BUFSIZE];
+					for (int n; (n = is.read(buf)) > 0; ) {
+						body.write(buf, 0, n);
+					}
+				}
+			}
+			r.body = body.toByteArray();
+			
+			if (i >= redirects || !isRedirect(r)) {
+				return r;
+			}
+			u = new URL(u, r.location);
+			Metrics.counter("eli.redirects").inc();
+		}
+	}
+	
+	/**
+	 * Get the URL of the lookup
+	 * 
+	 * @param key lookup key
+	 * @return URL
+	 * @throws IOException 
+	 */
+	private URL url(EliKey key) throws IOException {
+		return new URL(ssl ? "https" : "http", host, 
+						(port != (ssl ? 443 : 80)) ? port : -1, target(key));
+	}
+	
+	/**
+	 * Check if the ELI service is reached without a proxy
+	 * 
+	 * @return true if no proxy is used
+	 */
+	private boolean isDirect() {
+		ProxySelector ps = ProxySelector.getDefault();
+		if (ps == null) {
+			return true;
+		}
+		try {
+			List<Proxy> proxies = ps.select(new URI(ssl ? "https" : "http", null, host, port, 
+															"/", null, null));
+			return proxies.isEmpty() || proxies.get(0).type() == Proxy.Type.DIRECT;
+		} catch (URISyntaxException | IllegalArgumentException ex) {
+			return true;
+		}
+	}
+	
+	/**
+	 * Look up the keys one by one, through a proxy
+	 * 
+	 * @param keys lookup keys
+	 * @param throttle rate limiter
+	 * @param h response handler
+	 * @throws IOException 
+	 */
+	private void lookupEach(List<EliKey> keys, Throttle throttle, ResponseHandler h) 
+															throws IOException {
+		for (EliKey key: keys) {
+			long start = System.nanoTime();
+			Response r = fetch(url(key), throttle, MAX_REDIRECTS);
+			Metrics.timer("eli.latency").since(start);
+			h.handle(key, r.status, subjects(r));
+		}
+	}
+	
+	/**
+	 * Look up a batch of keys.
+	 * The handler is called for every key, in the order of the list.
+	 * 
+	 * Requests are only written ahead of the responses when the throttle
+	 * allows them immediately, so waiting for the rate limit does not count 
+	 * towards the read timeout of the requests already sent.
+	 * 
+	 * @param keys lookup keys
+	 * @param throttle rate limiter, or {@link #UNLIMITED}
+	 * @param h response handler
+	 * @throws IOException when (part of) the batch could not be sent
+	 */
+	public void lookup(List<EliKey> keys, Throttle throttle, ResponseHandler h) 
+															throws IOException {
+		if (!isDirect()) {
+			lookupEach(keys, throttle, h);
+			return;
+		}
+		long[] sent = new long[keys.size()];
+		int done = 0;
+		while (done < keys.size()) {
+			int start = done;
+			try (Socket s = connect()) {
+				OutputStream out = new BufferedOutputStream(s.getOutputStream(), BUFSIZE);
+				InputStream in = new BufferedInputStream(s.getInputStream(), BUFSIZE);
+				int next = done;
+				boolean open = true;
+				while (open && done < keys.size()) {
+					if (next == done) {
+						// nothing in flight, wait for the rate limit
+						throttle.acquire();
+						sent[next] = System.nanoTime();
+						writeRequest(out, keys.get(next++));
+					}
+					while (next < keys.size() && throttle.tryAcquire()) {
+						sent[next] = System.nanoTime();
+						writeRequest(out, keys.get(next++));
+					}
+					out.flush();
+					
+					Response r = readHeaders(in);
+					r.body = readBody(in, r);
+					open = r.keepAlive;
+					if (isRedirect(r)) {
+						r = follow(r, keys.get(done), throttle);
+					}
+					Metrics.timer("eli.latency").since(sent[done]);
+					h.handle(keys.get(done), r.status, subjects(r));
+					done++;
+				}
+			} catch (IOException ex) {
+				// retry the remaining requests only if this connection made progress
+				if (done == start) {
+					throw ex;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param endpoint base URL of the ELI service
+	 * @param accept value of the accept header
+	 * @param timeout connect and read timeout in milliseconds
+	 * @throws IOException when the URL is not valid
+	 */
+	public EliBatchClient(String endpoint, String accept, int timeout) throws IOException {
+		URL u = new URL(endpoint);
+		this.ssl = u.getProtocol().equals("https");
+		this.host = u.getHost();
+		this.port = (u.getPort() > 0) ? u.getPort() : u.getDefaultPort();
+		this.path = u.getPath();
+		this.accept = accept;
+		this.timeout = timeout;
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache for ELI lookups, stored as an append-only tab-separated log.
+ * 
+ * Each line contains the time of the lookup, the key (date, type, normalized 
+ * title) and the space-separated list of matching IRIs, which is empty 
+ * when nothing was found. Later lines override earlier ones.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class EliCache implements AutoCloseable {
+	private final static Logger LOG = LoggerFactory.getLogger(EliCache.class);
+	
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	
+	private final Map<EliKey,Entry> entries = new HashMap<>();
+	private final File file;
+	private final long ttlHit;
+	private final long ttlMiss;
+	private final boolean offline;
+	private Writer w;
+
+	/**
+	 * Cache entry
+	 */
+	private static class Entry {
+		private final long time;
+		private final Set<IRI> iris;
+		
+		private Entry(long time, Set<IRI> iris) {
+			this.time = time;
+			this.iris = iris;
+		}
+	}
+	
+	/**
+	 * Check if entry is still valid
+	 * 
+	 * @param e entry
+	 * @return true if valid
+	 */
+	private boolean isValid(Entry e) {
+		if (offline) {
+			return true;
+		}
+		long ttl = e.iris.isEmpty() ? ttlMiss : ttlHit;
+		return System.currentTimeMillis() - e.time < ttl;
+	}
+	
+	/**
+	 * Get matched IRIs from the cache.
+	 * Expired entries are ignored, unless running offline.
+	 * 
+	 * @param key lookup key
+	 * @return set of IRIs (empty for a negative result) or null if not cached
+	 */
+	public synchronized Set<IRI> get(EliKey key) {
+		Entry e = entries.get(key);
+		return (e != null && isValid(e)) ? e.iris : null;
+	}
+	
+	/**
+	 * Store result of a lookup
+	 * 
+	 * @param key lookup key
+	 * @param iris set of matched IRIs, empty if nothing was found
+	 */
+	public synchronized void put(EliKey key, Set<IRI> iris) {
+		Entry e = new Entry(System.currentTimeMillis(), iris);
+		entries.put(key, e);
+		try {
+			write(w, key, e);
+			w.flush();
+		} catch (IOException ioe) {
+			LOG.error("Could not write to cache {}", file);
+		}
+	}
+	
+	/**
+	 * Get number of entries
+	 * 
+	 * @return number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Write entry as a line
+	 * 
+	 * @param w writer
+	 * @param key lookup key
+	 * @param e entry
+	 * @throws IOException 
+	 */
+	private static void write(Writer w, EliKey key, Entry e) throws IOException {
+		w.write(Long.toString(e.time));
+		w.write('\t');
+		w.write(key.getDate());
+		w.write('\t');
+		w.write(key.getType());
+		w.write('\t');
+		w.write(key.getNormalized());
+		w.write('\t');
+		w.write(e.iris.stream().map(IRI::stringValue).collect(Collectors.joining(" ")));
+		w.write('\n');
+	}
+	
+	/**
+	 * Read log file into memory
+	 * 
+	 * @return number of lines read
+	 * @throws IOException 
+	 */
+	private int load() throws IOException {
+		int lines = 0;
+		try (BufferedReader r = Files.newBufferedReader(file.toPath(), 
+														StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = r.readLine()) != null) {
+				lines++;
+				String[] parts = line.split("\t", -1);
+				if (parts.length != 5) {
+					LOG.warn("Skipping invalid cache line {}", lines);
+					continue;
+				}
+				long time;
+				Set<IRI> iris = new HashSet<>();
+				try {
+					time = Long.parseLong(parts[0]);
+					for (String s: parts[4].split(" ")) {
+						if (!s.isEmpty()) {
+							iris.add(F.createIRI(s));
+						}
+					}
+				} catch (IllegalArgumentException ex) {
+					// corrupt time stamp or IRI
+					LOG.warn("Skipping invalid cache line {}", lines);
+					continue;
+				}
+				entries.put(new EliKey(parts[1], parts[2], parts[3]), 
+						new Entry(time, Collections.unmodifiableSet(iris)));
+			}
+		}
+		return lines;
+	}
+	
+	/**
+	 * Rewrite the log file, keeping only the most recent entry per key
+	 * 
+	 * @throws IOException 
+	 */
+	private void compact() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		try (Writer cw = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+			for (Map.Entry<EliKey,Entry> e: entries.entrySet()) {
+				write(cw, e.getKey(), e.getValue());
+			}
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		w.close();
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param file log file, will be created if it doesn't exist
+	 * @param ttlHitDays time-to-live for matches, in days
+	 * @param ttlMissDays time-to-live for negative results, in days
+	 * @param offline use expired entries, never go online
+	 * @throws IOException 
+	 */
+	public EliCache(File file, int ttlHitDays, int ttlMissDays, boolean offline) 
+															throws IOException {
+		this.file = file;
+		this.ttlHit = TimeUnit.DAYS.toMillis(ttlHitDays);
+		this.ttlMiss = TimeUnit.DAYS.toMillis(ttlMissDays);
+		this.offline = offline;
+		
+		if (file.exists()) {
+			int lines = load();
+			LOG.info("Loaded {} ELI cache entries from {} lines", entries.size(), lines);
+			if (lines > 2 * entries.size()) {
+				compact();
+			}
+		}
+		this.w = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, 
+							StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+}
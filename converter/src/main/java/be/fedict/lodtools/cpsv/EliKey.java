@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Lookup key for ELI matching: date, document type and title.
+ * Two keys are equal when their normalized titles are equal.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class EliKey {
+	private final String date;
+	private final String type;
+	private final String title;
+	private final String norm;
+	
+	/**
+	 * Normalize title: lower case and collapse whitespace
+	 * 
+	 * @param title title
+	 * @return normalized title
+	 */
+	public static String normalize(String title) {
+		StringBuilder sb = new StringBuilder(title.length());
+		boolean space = false;
+		for (int i = 0; i < title.length(); i++) {
+			char c = title.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = sb.length() > 0;
+			} else {
+				if (space) {
+					sb.append(' ');
+					space = false;
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString().toLowerCase(Locale.ROOT);
+	}
+	
+	/**
+	 * Get publication date
+	 * 
+	 * @return date as yyyy-mm-dd string
+	 */
+	public String getDate() {
+		return date;
+	}
+	
+	/**
+	 * Get document type
+	 * 
+	 * @return type
+	 */
+	public String getType() {
+		return type;
+	}
+	
+	/**
+	 * Get title, as found in the input
+	 * 
+	 * @return title
+	 */
+	public String getTitle() {
+		return title;
+	}
+	
+	/**
+	 * Get normalized title
+	 * 
+	 * @return normalized title
+	 */
+	public String getNormalized() {
+		return norm;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof EliKey)) {
+			return false;
+		}
+		EliKey k = (EliKey) o;
+		return date.equals(k.date) && type.equals(k.type) && norm.equals(k.norm);
+	}
+	
+	@Override
+	public int hashCode() {
+		return Objects.hash(date, type, norm);
+	}
+	
+	@Override
+	public String toString() {
+		return date + " " + type + " " + norm;
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param date publication date
+	 * @param type document type
+	 * @param title title
+	 */
+	public EliKey(String date, String type, String title) {
+		this.date = date;
+		this.type = type;
+		this.title = title;
+		this.norm = normalize(title);
+	}
+}
@@ -1,134 +1,306 @@
-/*
- * To change this license header, choose License Headers in Project Properties.
- * To change this template file, choose Tools | Templates
- * and open the template in the editor.
- */
-package be.fedict.lodtools.cpsv;
-
-import com.google.common.net.HttpHeaders;
-import java.io.FileNotFoundException;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.text.MessageFormat;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-
-import java.util.Collections;
-import java.util.Locale;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-
-import org.eclipse.rdf4j.model.IRI;
-import org.eclipse.rdf4j.model.Model;
-import org.eclipse.rdf4j.rio.RDFFormat;
-import org.eclipse.rdf4j.rio.Rio;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-/**
- *
- * @author Bart.Hanssens
- */
-public class EliMatcher {
-	private final static Logger LOG = LoggerFactory.getLogger(EliMatcher.class);
-	private final static Pattern p = 
-				Pattern.compile("(Wet|Loi|Decreet|Décret) (van|de|du) " +
-						"(\\d{1,2} \\w+ \\d{4}) (.*)");
-		
-	private final static String ELI = "https://id.belgium.be" +
-								"/_query/eli/match?date={0}&type={1}&q={2}";
-	
-	private final static DateTimeFormatter DATE_FR = 
-			DateTimeFormatter.ofPattern("dd MMMM yyyy", Locale.forLanguageTag("fr"));
-	
-	private final static DateTimeFormatter DATE_NL = 
-			DateTimeFormatter.ofPattern("dd MMMM yyyy", Locale.forLanguageTag("nl"));
-	
-	/**
-	 * Try to match framework using date, type and title
-	 * 
-	 * @param date publication date
-	 * @param type document type
-	 * @param title title of the document
-	 * @return 
-	 */
-	private static Set<IRI> match(String date, String type, String title) {
-		Set<IRI> matched = Collections.emptySet();
-		
-		URLConnection conn;
-		
-		try {
-			String enc = URLEncoder.encode(title, StandardCharsets.UTF_8.toString());
-			URL u = new URL(MessageFormat.format(ELI, date, type, enc));
-			conn = u.openConnection();
-			conn.setRequestProperty(HttpHeaders.ACCEPT, 
-									RDFFormat.NTRIPLES.getDefaultMIMEType());
-			
-			try (InputStream in = conn.getInputStream()) {
-				Model m = Rio.parse(in, "http://pubserv.belgif.be", RDFFormat.NTRIPLES);
-				matched = m.subjects().stream()
-										.map(IRI.class::cast)
-										.collect(Collectors.toSet());
-				LOG.info("Mapped {}", title);
-			}
-		} catch (MalformedURLException ex) {
-			LOG.error("Could not build url");
-		} catch (FileNotFoundException ex) {
-			LOG.warn("No matching ELI for {}", title);
-		} catch (IOException ex) {
-			LOG.error("Error matching: {}", ex);
-		}
-		return matched;
-	}
-	
-	/**
-	 * Parse string to date
-	 * 
-	 * @param str
-	 * @return 
-	 */
-	private static String parseDate(String str) {
-		LocalDate date = null;
-		try {
-			date = LocalDate.parse(str, DATE_FR);	
-		} catch (DateTimeParseException dte) {
-			try {
-				date = LocalDate.parse(str, DATE_NL);
-			} catch (DateTimeParseException dte2) {
-				LOG.error("Exception in parsing {} to date", str);
-			}
-		}
-		return (date != null) ? date.format(DateTimeFormatter.ISO_LOCAL_DATE) : "";
-	} 
-	
-	/**
-	 * Find a match with
-	 * 
-	 * @param str
-	 * @return matched
-	 */
-	public static Set<IRI> match(String str) {
-		Matcher matcher = p.matcher(str);
-		if (! matcher.matches()) {
-			return Collections.EMPTY_SET;
-		}
-		
-		String m1 = matcher.group(1);
-		String type = (m1.equals("Wet") || m1.equals("Loi")) ? "LAW" : "DECREE";
-		
-		String date = parseDate(matcher.group(3));
-		String title = m1 + " " + matcher.group(4);
-	
-		return match(date, type, title);
-	}
-}
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package be.fedict.lodtools.cpsv;
+
+import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.RateLimiter;
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author Bart.Hanssens
+ */
+public class EliMatcher {
+	private final static Logger LOG = LoggerFactory.getLogger(EliMatcher.class);
+	final static String ELI = "/_query/eli/match?date={0}&type={1}&q={2}";
+	
+	private static String endpoint = "https://id.belgium.be";
+	private static EliCache cache = null;
+	private static boolean offline = false;
+	private static int timeout = 30_000;
+	private static double rate = 0;
+	
+	private final static Map<String,RateLimiter> LIMITERS = new ConcurrentHashMap<>();
+	
+	/**
+	 * Set the base URL of the ELI service, e.g. to use a local test server
+	 * 
+	 * @param url base URL, without trailing slash
+	 */
+	public static void setEndpoint(String url) {
+		endpoint = url;
+	}
+	
+	/**
+	 * Set connect and read timeout
+	 * 
+	 * @param millis timeout in milliseconds
+	 */
+	public static void setTimeout(int millis) {
+		timeout = millis;
+	}
+	
+	/**
+	 * Set maximum number of requests per second, per host
+	 * 
+	 * @param perSecond requests per second, 0 for no limit
+	 */
+	public static void setRateLimit(double perSecond) {
+		rate = perSecond;
+		LIMITERS.clear();
+	}
+	
+	/**
+	 * Wait until a request to this host is allowed
+	 * 
+	 * @param host host name
+	 */
+	private static void throttle(String host) {
+		if (rate > 0) {
+			LIMITERS.computeIfAbsent(host, h -> RateLimiter.create(rate)).acquire();
+		}
+	}
+	
+	/**
+	 * Get the rate limiter for a host
+	 * 
+	 * @param host host name
+	 * @return throttle
+	 */
+	private static EliBatchClient.Throttle throttler(String host) {
+		if (rate <= 0) {
+			return EliBatchClient.UNLIMITED;
+		}
+		RateLimiter limiter = LIMITERS.computeIfAbsent(host, h -> RateLimiter.create(rate));
+		return new EliBatchClient.Throttle() {
+			@Override
+			public void acquire() {
+				limiter.acquire();
+			}
+
+			@Override
+			public boolean tryAcquire() {
+				return limiter.tryAcquire();
+			}
+		};
+	}
+	
+	/**
+	 * Set persistent cache for lookups
+	 * 
+	 * @param c cache or null
+	 */
+	public static void setCache(EliCache c) {
+		cache = c;
+	}
+	
+	/**
+	 * Do not query the ELI service, only use cached results
+	 * 
+	 * @param off true for offline mode
+	 */
+	public static void setOffline(boolean off) {
+		offline = off;
+	}
+	
+	/**
+	 * Try to match framework using date, type and title, using the cache
+	 * 
+	 * @param key lookup key
+	 * @return set of IRIs
+	 */
+	public static Set<IRI> match(EliKey key) {
+		if (cache != null) {
+			Set<IRI> cached = cache.get(key);
+			if (cached != null) {
+				Metrics.counter("eli.cache.hits").inc();
+				return cached;
+			}
+			Metrics.counter("eli.cache.misses").inc();
+		}
+		if (offline) {
+			return Collections.emptySet();
+		}
+		return lookup(key);
+	}
+	
+	/**
+	 * Try to match a batch of frameworks, using the cache.
+	 * Lookups that are not cached are sent as one pipelined batch.
+	 * 
+	 * @param keys lookup keys
+	 * @return map of key to set of IRIs, empty set if no match was found
+	 */
+	public static Map<EliKey,Set<IRI>> match(List<EliKey> keys) {
+		Map<EliKey,Set<IRI>> matched = new HashMap<>();
+		List<EliKey> todo = new ArrayList<>();
+		
+		for (EliKey key: keys) {
+			Set<IRI> cached = (cache != null) ? cache.get(key) : null;
+			if (cached != null) {
+				Metrics.counter("eli.cache.hits").inc();
+				matched.put(key, cached);
+				continue;
+			}
+			if (cache != null) {
+				Metrics.counter("eli.cache.misses").inc();
+			}
+			if (offline) {
+				matched.put(key, Collections.emptySet());
+			} else {
+				todo.add(key);
+			}
+		}
+		if (todo.size() == 1) {
+			matched.put(todo.get(0), lookup(todo.get(0)));
+		} else if (todo.size() > 1) {
+			lookup(todo, matched);
+		}
+		return matched;
+	}
+	
+	/**
+	 * Query the ELI service for a batch of keys, using one connection
+	 * 
+	 * @param keys lookup keys
+	 * @param matched map to add the matched IRIs to
+	 */
+	private static void lookup(List<EliKey> keys, Map<EliKey,Set<IRI>> matched) {
+		Metrics.counter("eli.requests").inc(keys.size());
+		Metrics.counter("eli.batches").inc();
+		try {
+			EliBatchClient client = new EliBatchClient(endpoint, 
+									RDFFormat.NTRIPLES.getDefaultMIMEType(), timeout);
+			String host = new URL(endpoint).getHost();
+			
+			client.lookup(keys, throttler(host), (key, status, iris) -> {
+				if (status == 200) {
+					Metrics.counter("eli.matched").inc();
+					LOG.info("Mapped {}", key.getTitle());
+				} else if (status == 404) {
+					Metrics.counter("eli.notfound").inc();
+					LOG.warn("No matching ELI for {}", key.getTitle());
+				} else {
+					Metrics.counter("eli.errors").inc();
+					LOG.error("Error matching {}: status {}", key.getTitle(), status);
+					return;
+				}
+				if (cache != null) {
+					cache.put(key, iris);
+				}
+				matched.put(key, iris);
+			});
+		} catch (IOException ex) {
+			LOG.error("Error matching batch: {}", ex);
+		}
+		for (EliKey key: keys) {
+			if (!matched.containsKey(key)) {
+				Metrics.counter("eli.errors").inc();
+				matched.put(key, Collections.emptySet());
+			}
+		}
+	}
+	
+	/**
+	 * Query the ELI service using date, type and title
+	 * 
+	 * @param key lookup key
+	 * @return set of IRIs
+	 */
+	private static Set<IRI> lookup(EliKey key) {
+		Set<IRI> matched = Collections.emptySet();
+		
+		String date = key.getDate();
+		String type = key.getType();
+		String title = key.getTitle();
+		
+		URLConnection conn;
+		
+		Metrics.counter("eli.requests").inc();
+		long start = System.nanoTime();
+		try {
+			String enc = URLEncoder.encode(title, StandardCharsets.UTF_8.toString());
+			URL u = new URL(endpoint + MessageFormat.format(ELI, date, type, enc));
+			throttle(u.getHost());
+			start = System.nanoTime();
+			conn = u.openConnection();
+			conn.setConnectTimeout(timeout);
+			conn.setReadTimeout(timeout);
+			conn.setRequestProperty(HttpHeaders.ACCEPT, 
+									RDFFormat.NTRIPLES.getDefaultMIMEType());
+			
+			try (InputStream in = new BufferedInputStream(conn.getInputStream())) {
+				if (EliBatchClient.isNTriples(conn.getContentType())) {
+					matched = EliBatchClient.subjects(in);
+					LOG.info("Mapped {}", title);
+				}
+			}
+			if (cache != null) {
+				cache.put(key, matched);
+			}
+			Metrics.counter("eli.matched").inc();
+		} catch (MalformedURLException ex) {
+			Metrics.counter("eli.errors").inc();
+			LOG.error("Could not build url");
+		} catch (FileNotFoundException ex) {
+			Metrics.counter("eli.notfound").inc();
+			LOG.warn("No matching ELI for {}", title);
+			if (cache != null) {
+				cache.put(key, matched);
+			}
+		} catch (IOException ex) {
+			Metrics.counter("eli.errors").inc();
+			LOG.error("Error matching: {}", ex);
+		}
+		Metrics.timer("eli.latency").since(start);
+		return matched;
+	}
+	
+	/**
+	 * Parse the title of a framework into a lookup key
+	 * 
+	 * @param str
+	 * @return key or null if the title could not be parsed
+	 */
+	public static EliKey parse(String str) {
+		return EliTitleRecognizer.parse(str);
+	}
+	
+	/**
+	 * Find a match with
+	 * 
+	 * @param str
+	 * @return matched
+	 */
+	public static Set<IRI> match(String str) {
+		EliKey key = parse(str);
+		return (key != null) ? match(key) : Collections.emptySet();
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import be.fedict.lodtools.cpsv.vocab.CPSV;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Match legal frameworks to ELI using a bounded pool of threads.
+ * 
+ * Titles are parsed into lookup keys first, and only one lookup is done
+ * per distinct key during a conversion, even if the key is used by multiple
+ * frameworks, languages or procedures.
+ * The keys are forgotten by {@link #reset()}, so a long running converter
+ * does not keep results longer than the time-to-live of the {@link EliCache}.
+ * All lookups for a model are started at once, in batches that are sent
+ * over one connection each. The matched ELI identifiers are added to the model 
+ * when all requests have finished, either blocking the caller or asynchronously 
+ * as a side stage of the {@link Pipeline}.
+ * Timeouts and rate limiting are handled by {@link EliMatcher}.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class EliStage implements AutoCloseable {
+	private final static Logger LOG = LoggerFactory.getLogger(EliStage.class);
+	
+	private final ExecutorService pool;
+	private final int batch;
+	private final Map<EliKey,CompletableFuture<Set<IRI>>> lookups = new ConcurrentHashMap<>();
+	private final AtomicLong titles = new AtomicLong();
+	
+	/**
+	 * Lookup of one title of a framework
+	 */
+	private static class Lookup {
+		private final Resource fw;
+		private final CompletableFuture<Set<IRI>> result;
+		
+		private Lookup(Resource fw, CompletableFuture<Set<IRI>> result) {
+			this.fw = fw;
+			this.result = result;
+		}
+	}
+	
+	/**
+	 * Match the titles of all frameworks in the model and add identifiers.
+	 * 
+	 * @param m RDF model
+	 */
+	public void match(Model m) {
+		try {
+			matchAsync(m).get();
+		} catch (ExecutionException ex) {
+			LOG.error("Error matching: {}", ex.getCause());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			LOG.warn("Interrupted");
+		}
+	}
+	
+	/**
+	 * Start matching the titles of all frameworks in the model, without waiting
+	 * for the lookups to finish.
+	 * The identifiers are added when all lookups for the model are done, 
+	 * so the model should not be used until the returned future completes.
+	 * 
+	 * @param m RDF model
+	 * @return future returning the same model
+	 */
+	public CompletableFuture<Model> matchAsync(Model m) {
+		List<Lookup> todo = new ArrayList<>();
+		Map<EliKey,CompletableFuture<Set<IRI>>> started = new LinkedHashMap<>();
+		
+		for (Resource fw: m.filter(null, RDF.TYPE, CPSV.CLASS_FRAMEWORK).subjects()) {
+			for (Value v: m.filter(fw, DCTERMS.TITLE, null).objects()) {
+				EliKey key = EliMatcher.parse(v.stringValue());
+				if (key != null) {
+					titles.incrementAndGet();
+					Metrics.counter("eli.titles").inc();
+					CompletableFuture<Set<IRI>> cf = new CompletableFuture<>();
+					CompletableFuture<Set<IRI>> f = lookups.putIfAbsent(key, cf);
+					if (f == null) {
+						// first time this key is seen
+						started.put(key, cf);
+						f = cf;
+					}
+					todo.add(new Lookup(fw, f));
+				}
+			}
+		}
+		submit(started);
+		
+		CompletableFuture<?>[] all = todo.stream().map(l -> l.result)
+												.toArray(CompletableFuture<?>[]::new);
+		return CompletableFuture.allOf(all).handle((v, t) -> {
+			for (Lookup l: todo) {
+				try {
+					l.result.join().forEach(e -> m.add(l.fw, DCTERMS.IDENTIFIER, e));
+				} catch (CompletionException | CancellationException ex) {
+					LOG.error("Error matching {}: {}", l.fw, 
+						(ex.getCause() != null) ? ex.getCause() : ex);
+				}
+			}
+			return m;
+		});
+	}
+	
+	/**
+	 * Submit new lookups in batches
+	 * 
+	 * @param started lookups to be done
+	 */
+	private void submit(Map<EliKey,CompletableFuture<Set<IRI>>> started) {
+		List<EliKey> keys = new ArrayList<>(started.keySet());
+		for (int i = 0; i < keys.size(); i += batch) {
+			List<EliKey> part = keys.subList(i, Math.min(i + batch, keys.size()));
+			pool.submit(() -> {
+				try {
+					Map<EliKey,Set<IRI>> matched = EliMatcher.match(part);
+					part.forEach(k -> started.get(k).complete(matched.get(k)));
+				} catch (RuntimeException ex) {
+					part.forEach(k -> started.get(k).completeExceptionally(ex));
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Forget the lookups of the previous conversion.
+	 * Must not be called while matching.
+	 */
+	public void reset() {
+		LOG.info("Matched {} titles using {} distinct lookups", titles.get(), lookups.size());
+		Metrics.counter("eli.lookups").inc(lookups.size());
+		titles.set(0);
+		lookups.clear();
+	}
+	
+	@Override
+	public void close() {
+		reset();
+		pool.shutdownNow();
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param threads maximum number of concurrent connections
+	 * @param batch maximum number of lookups per connection
+	 */
+	public EliStage(int threads, int batch) {
+		this.batch = Math.max(1, batch);
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "eli");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+}
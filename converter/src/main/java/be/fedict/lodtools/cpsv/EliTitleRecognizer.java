@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.util.Arrays;
+
+/**
+ * Recognize titles of legal texts, like "Wet van 12 januari 2007 betreffende ...",
+ * and turn them into ELI lookup keys.
+ * 
+ * The title is scanned once, from left to right: document type, connecting 
+ * word, day, month name and year. Types, connecting words and month names
+ * (Dutch, French and German) are matched case-insensitively using tries, 
+ * no regular expressions or exceptions are used.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class EliTitleRecognizer {
+	public final static String LAW = "LAW";
+	public final static String DECREE = "DECREE";
+	public final static String ROYAL_DECREE = "ROYAL_DECREE";
+	public final static String ORDINANCE = "ORDINANCE";
+	
+	private final static Trie<String> TYPES = new Trie<>();
+	private final static Trie<Boolean> CONNECTORS = new Trie<>();
+	private final static Trie<Integer> MONTHS = new Trie<>();
+	
+	private final static int[] DAYS = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+	
+	static {
+		TYPES.put("wet", LAW);
+		TYPES.put("loi", LAW);
+		TYPES.put("gesetz", LAW);
+		TYPES.put("decreet", DECREE);
+		TYPES.put("décret", DECREE);
+		TYPES.put("dekret", DECREE);
+		TYPES.put("koninklijk besluit", ROYAL_DECREE);
+		TYPES.put("arrêté royal", ROYAL_DECREE);
+		TYPES.put("königlicher erlass", ROYAL_DECREE);
+		TYPES.put("ordonnantie", ORDINANCE);
+		TYPES.put("ordonnance", ORDINANCE);
+		TYPES.put("verordnung", ORDINANCE);
+		
+		for (String c: new String[] { "van", "de", "du", "vom" }) {
+			CONNECTORS.put(c, Boolean.TRUE);
+		}
+		
+		String[][] months = {
+			{ "januari", "februari", "maart", "april", "mei", "juni", "juli", 
+				"augustus", "september", "oktober", "november", "december" },
+			{ "janvier", "février", "mars", "avril", "mai", "juin", "juillet",
+				"août", "septembre", "octobre", "novembre", "décembre" },
+			{ "januar", "februar", "märz", "april", "mai", "juni", "juli", 
+				"august", "september", "oktober", "november", "dezember" },
+			// without accents
+			{ "janvier", "fevrier", "mars", "avril", "mai", "juin", "juillet",
+				"aout", "septembre", "octobre", "novembre", "decembre" },
+			{ "januar", "februar", "maerz", "april", "mai", "juni", "juli", 
+				"august", "september", "oktober", "november", "dezember" }
+		};
+		for (String[] names: months) {
+			for (int i = 0; i < names.length; i++) {
+				MONTHS.put(names[i], i + 1);
+			}
+		}
+	}
+	
+	/**
+	 * Simple case-insensitive trie, finding the longest key at a given position.
+	 * 
+	 * @param <V> type of the value
+	 */
+	private static class Trie<V> {
+		private char[] chars = new char[0];
+		private Trie<V>[] children = newArray(0);
+		private V value;
+		
+		@SuppressWarnings("unchecked")
+		private static <V> Trie<V>[] newArray(int len) {
+			return (Trie<V>[]) new Trie<?>[len];
+		}
+		
+		/**
+		 * Get child node for a character
+		 * 
+		 * @param c lower case character
+		 * @return child node or null
+		 */
+		private Trie<V> child(char c) {
+			for (int i = 0; i < chars.length; i++) {
+				if (chars[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * Add a key
+		 * 
+		 * @param key lower case key
+		 * @param v value
+		 */
+		private void put(String key, V v) {
+			Trie<V> node = this;
+			for (int i = 0; i < key.length(); i++) {
+				char c = key.charAt(i);
+				Trie<V> next = node.child(c);
+				if (next == null) {
+					next = new Trie<>();
+					int len = node.chars.length;
+					node.chars = Arrays.copyOf(node.chars, len + 1);
+					node.children = Arrays.copyOf(node.children, len + 1);
+					node.chars[len] = c;
+					node.children[len] = next;
+				}
+				node = next;
+			}
+			node.value = v;
+		}
+		
+		/**
+		 * Find the longest key starting at a position, followed by a space
+		 * 
+		 * @param s string
+		 * @param start start position
+		 * @param found node of the key that was found (output)
+		 * @return end position of the key, or -1 if not found
+		 */
+		private int match(String s, int start, Trie<?>[] found) {
+			Trie<V> node = this;
+			int end = -1;
+			for (int i = start; i < s.length() && node != null; i++) {
+				char c = s.charAt(i);
+				if (c == ' ' && node.value != null) {
+					found[0] = node;
+					end = i;
+				}
+				node = node.child(Character.toLowerCase(c));
+			}
+			return end;
+		}
+	}
+	
+	/**
+	 * Skip spaces
+	 * 
+	 * @param s string
+	 * @param i position
+	 * @return position of next non-space character
+	 */
+	private static int skip(String s, int i) {
+		while (i < s.length() && s.charAt(i) == ' ') {
+			i++;
+		}
+		return i;
+	}
+	
+	/**
+	 * Check if a date is valid
+	 * 
+	 * @param day day of month
+	 * @param month month
+	 * @param year year
+	 * @return true if valid
+	 */
+	private static boolean valid(int day, int month, int year) {
+		if (day < 1 || day > DAYS[month - 1]) {
+			return false;
+		}
+		boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+		return (month != 2 || day < 29 || leap);
+	}
+	
+	/**
+	 * Format a date as yyyy-mm-dd
+	 * 
+	 * @param day day of month
+	 * @param month month
+	 * @param year year
+	 * @return date
+	 */
+	private static String format(int day, int month, int year) {
+		char[] c = { 
+			(char) ('0' + year / 1000), (char) ('0' + year / 100 % 10), 
+			(char) ('0' + year / 10 % 10), (char) ('0' + year % 10), '-',
+			(char) ('0' + month / 10), (char) ('0' + month % 10), '-',
+			(char) ('0' + day / 10), (char) ('0' + day % 10) };
+		return new String(c);
+	}
+	
+	/**
+	 * Parse the title of a legal text into a lookup key
+	 * 
+	 * @param str title
+	 * @return key or null if the title was not recognized
+	 */
+	public static EliKey parse(String str) {
+		Trie<?>[] found = new Trie<?>[1];
+		
+		// type of document
+		int typeEnd = TYPES.match(str, 0, found);
+		if (typeEnd < 0) {
+			return null;
+		}
+		String type = (String) found[0].value;
+		
+		// van, de, du...
+		int i = CONNECTORS.match(str, skip(str, typeEnd), found);
+		if (i < 0) {
+			return null;
+		}
+		
+		// day, 1 or 2 digits, optionally followed by "er" (French "1er")
+		i = skip(str, i);
+		int day = 0;
+		int digits = 0;
+		for (; i < str.length() && digits < 3; i++, digits++) {
+			char c = str.charAt(i);
+			if (c < '0' || c > '9') {
+				break;
+			}
+			day = day * 10 + (c - '0');
+		}
+		if (digits == 0 || digits > 2) {
+			return null;
+		}
+		if (str.startsWith("er", i)) {
+			i += 2;
+		}
+		
+		// name of the month
+		i = MONTHS.match(str, skip(str, i), found);
+		if (i < 0) {
+			return null;
+		}
+		int month = (Integer) found[0].value;
+		
+		// year, 4 digits followed by a space
+		i = skip(str, i);
+		if (i + 4 >= str.length() || str.charAt(i + 4) != ' ') {
+			return null;
+		}
+		int year = 0;
+		for (int j = i; j < i + 4; j++) {
+			char c = str.charAt(j);
+			if (c < '0' || c > '9') {
+				return null;
+			}
+			year = year * 10 + (c - '0');
+		}
+		
+		String date = valid(day, month, year) ? format(day, month, year) : "";
+		String title = str.substring(0, typeEnd) + " " + str.substring(i + 5);
+		
+		return new EliKey(date, type, title);
+	}
+}
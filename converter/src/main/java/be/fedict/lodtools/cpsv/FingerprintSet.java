@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of 64-bit fingerprints, using open addressing on a long array.
+ * Not thread-safe.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class FingerprintSet {
+	// 0 marks an empty slot, so the fingerprint 0 is stored separately
+	private long[] slots;
+	private boolean hasZero = false;
+	private int size = 0;
+	
+	/**
+	 * Get number of fingerprints in the set
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Spread bits, since fingerprints from weak hashes may be clustered.
+	 * 
+	 * @param l fingerprint
+	 * @return index in slots
+	 */
+	private int index(long l) {
+		l ^= (l >>> 33);
+		l *= 0xff51afd7ed558ccdL;
+		l ^= (l >>> 33);
+		return (int) l & (slots.length - 1);
+	}
+	
+	/**
+	 * Double the size of the array and rehash
+	 */
+	private void grow() {
+		long[] old = slots;
+		slots = new long[old.length * 2];
+		for (long l: old) {
+			if (l != 0) {
+				int i = index(l);
+				while (slots[i] != 0) {
+					i = (i + 1) & (slots.length - 1);
+				}
+				slots[i] = l;
+			}
+		}
+	}
+	
+	/**
+	 * Add a fingerprint to the set
+	 * 
+	 * @param l fingerprint
+	 * @return true if the fingerprint was not yet in the set
+	 */
+	public boolean add(long l) {
+		if (l == 0) {
+			if (hasZero) {
+				return false;
+			}
+			hasZero = true;
+			size++;
+			return true;
+		}
+		// keep load factor below 0.5
+		if (size * 2 >= slots.length) {
+			grow();
+		}
+		int i = index(l);
+		while (slots[i] != 0) {
+			if (slots[i] == l) {
+				return false;
+			}
+			i = (i + 1) & (slots.length - 1);
+		}
+		slots[i] = l;
+		size++;
+		return true;
+	}
+	
+	/**
+	 * Check if the set contains a fingerprint
+	 * 
+	 * @param l fingerprint
+	 * @return true if present
+	 */
+	public boolean contains(long l) {
+		if (l == 0) {
+			return hasZero;
+		}
+		int i = index(l);
+		while (slots[i] != 0) {
+			if (slots[i] == l) {
+				return true;
+			}
+			i = (i + 1) & (slots.length - 1);
+		}
+		return false;
+	}
+	
+	/**
+	 * Remove all fingerprints
+	 */
+	public void clear() {
+		Arrays.fill(slots, 0);
+		hasZero = false;
+		size = 0;
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param capacity initial capacity, will be rounded to a power of 2
+	 */
+	public FingerprintSet(int capacity) {
+		int len = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+		slots = new long[len];
+	}
+	
+	/**
+	 * Constructor
+	 */
+	public FingerprintSet() {
+		this(1024);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.function.Function;
+
+import org.eclipse.rdf4j.model.IRI;
+
+/**
+ * Bounded, thread-safe cache for interning identifier IRIs, 
+ * so repeated identifiers share one instance.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class IriCache {
+	private final String name;
+	private final Cache<String,IRI> cache;
+	
+	/**
+	 * Get IRI from the cache, or create and store it
+	 * 
+	 * @param key key
+	 * @param fn function creating the IRI
+	 * @return IRI
+	 */
+	public IRI get(String key, Function<String,IRI> fn) {
+		IRI iri = cache.getIfPresent(key);
+		if (iri == null) {
+			iri = fn.apply(key);
+			cache.put(key, iri);
+		}
+		return iri;
+	}
+	
+	/**
+	 * Get the name of the cache
+	 * 
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Get statistics
+	 * 
+	 * @return statistics
+	 */
+	public CacheStats stats() {
+		return cache.stats();
+	}
+	
+	@Override
+	public String toString() {
+		CacheStats s = cache.stats();
+		return String.format("%s: %d entries, %d requests, hit ratio %.3f", 
+							name, cache.size(), s.requestCount(), s.hitRate());
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param name name of the cache
+	 * @param size maximum number of entries
+	 */
+	public IriCache(String name, int size) {
+		this.name = name;
+		this.cache = CacheBuilder.newBuilder().maximumSize(size).recordStats().build();
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turn the HTML snippets used in EDRL texts into plain text literals.
+ * 
+ * Tags are removed, (block-level tags are replaced by a space), character 
+ * entities are decoded and whitespace is collapsed, all in a single pass 
+ * without regular expressions.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class LiteralNormalizer {
+	// longest entity name to look for
+	private final static int MAX_ENTITY = 10;
+	
+	private final static String[] BLOCKS = new String[]{
+		"p", "div", "br", "li", "ul", "ol", "dl", "dt", "dd", "table", "tr", "td", "th", 
+		"h1", "h2", "h3", "h4", "h5", "h6", "blockquote", "hr", "pre" };
+	
+	private final static Map<String,Character> ENTITIES = new HashMap<>();
+	static {
+		String[] names = new String[]{
+			"amp", "&", "lt", "<", "gt", ">", "quot", "\"", "apos", "'", "nbsp", "\u00A0",
+			"agrave", "à", "aacute", "á", "acirc", "â", "auml", "ä", 
+			"Agrave", "À", "Aacute", "Á", "Acirc", "Â", "Auml", "Ä",
+			"egrave", "è", "eacute", "é", "ecirc", "ê", "euml", "ë",
+			"Egrave", "È", "Eacute", "É", "Ecirc", "Ê", "Euml", "Ë",
+			"igrave", "ì", "iacute", "í", "icirc", "î", "iuml", "ï",
+			"Icirc", "Î", "Iuml", "Ï",
+			"ograve", "ò", "oacute", "ó", "ocirc", "ô", "ouml", "ö",
+			"Ocirc", "Ô", "Ouml", "Ö",
+			"ugrave", "ù", "uacute", "ú", "ucirc", "û", "uuml", "ü",
+			"Ucirc", "Û", "Uuml", "Ü",
+			"ccedil", "ç", "Ccedil", "Ç", "szlig", "ß", "oelig", "œ", "OElig", "Œ",
+			"euro", "€", "laquo", "«", "raquo", "»", "lsquo", "‘", "rsquo", "’",
+			"ldquo", "“", "rdquo", "”", "ndash", "–", "mdash", "—",
+			"hellip", "…", "bull", "•", "middot", "·", "deg", "°", 
+			"copy", "©", "reg", "®", "sect", "§", "shy", "\u00AD"
+		};
+		for (int i = 0; i < names.length; i += 2) {
+			ENTITIES.put(names[i], names[i + 1].charAt(0));
+		}
+	}
+	
+	/**
+	 * Check if a character is whitespace, including non-breaking space
+	 * 
+	 * @param c character
+	 * @return true if whitespace
+	 */
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\u00A0' || (c <= ' ' && Character.isWhitespace(c));
+	}
+	
+	/**
+	 * Check if a code point is allowed in XML 1.0, 
+	 * so NUL, most control characters and unpaired surrogates are not.
+	 * 
+	 * @param c code point
+	 * @return true if allowed
+	 */
+	private static boolean isXmlChar(int c) {
+		return (c >= 0x20 && c <= 0xD7FF) || c == 0x09 || c == 0x0A || c == 0x0D
+			|| (c >= 0xE000 && c <= 0xFFFD) || (c >= 0x10000 && c <= 0x10FFFF);
+	}
+	
+	/**
+	 * Check if the tag between start and end is a block-level element
+	 * 
+	 * @param str string
+	 * @param start position after the opening bracket
+	 * @param end position of the closing bracket
+	 * @return true if block-level element
+	 */
+	private static boolean isBlock(String str, int start, int end) {
+		int i = start;
+		if (i < end && str.charAt(i) == '/') {
+			i++;
+		}
+		int j = i;
+		while (j < end && Character.isLetterOrDigit(str.charAt(j))) {
+			j++;
+		}
+		int len = j - i;
+		if (len == 0) {
+			return false;
+		}
+		for (String block: BLOCKS) {
+			if (block.length() == len && str.regionMatches(true, i, block, 0, len)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Decode a character entity, like &amp;eacute; or &amp;#233;
+	 * 
+	 * @param str string
+	 * @param start position after the ampersand
+	 * @param end position of the semicolon
+	 * @return code point (not necessarily valid) or -1 if not an entity
+	 */
+	private static int decode(String str, int start, int end) {
+		if (str.charAt(start) == '#') {
+			int radix = 10;
+			int i = start + 1;
+			if (i < end && (str.charAt(i) == 'x' || str.charAt(i) == 'X')) {
+				radix = 16;
+				i++;
+			}
+			if (i == end) {
+				return -1;
+			}
+			int cp = 0;
+			for (; i < end; i++) {
+				int d = Character.digit(str.charAt(i), radix);
+				if (d < 0 || cp > Character.MAX_CODE_POINT) {
+					return -1;
+				}
+				cp = cp * radix + d;
+			}
+			return cp;
+		}
+		Character c = ENTITIES.get(str.substring(start, end));
+		return (c != null) ? c : -1;
+	}
+	
+	/**
+	 * Remove tags, decode entities and collapse whitespace.
+	 * Leading and trailing whitespace is removed, as are characters 
+	 * (also when encoded as character reference) that are not allowed in XML.
+	 * 
+	 * @param str HTML snippet or plain text
+	 * @return plain text or null
+	 */
+	public static String normalize(String str) {
+		if (str == null) {
+			return null;
+		}
+		int len = str.length();
+		StringBuilder sb = new StringBuilder(len);
+		boolean space = false;
+		
+		for (int i = 0; i < len; i++) {
+			int c = str.codePointAt(i);
+			if (c >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+				i++;
+			}
+			
+			if (c == '<') {
+				int end = str.indexOf('>', i + 1);
+				if (end > 0) {
+					if (isBlock(str, i + 1, end)) {
+						space = true;
+					}
+					i = end;
+					continue;
+				}
+			} else if (c == '&') {
+				int end = str.indexOf(';', i + 1);
+				if (end > i + 1 && end - i <= MAX_ENTITY) {
+					int cp = decode(str, i + 1, end);
+					if (cp >= 0) {
+						c = cp;
+						i = end;
+					}
+				}
+			}
+			
+			if (isSpace(c)) {
+				space = true;
+				continue;
+			}
+			if (c == '\u00AD' || !isXmlChar(c)) {
+				// soft hyphen or invalid character
+				continue;
+			}
+			if (space && sb.length() > 0) {
+				sb.append(' ');
+			}
+			space = false;
+			if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+				sb.append((char) c);
+			} else {
+				sb.appendCodePoint(c);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -25,42 +25,55 @@
  */
 package be.fedict.lodtools.cpsv;
 
+import be.fedict.lodtools.cpsv.input.ArchiveSource;
+import be.fedict.lodtools.cpsv.input.DirectorySource;
+import be.fedict.lodtools.cpsv.input.ProcedureSource;
 import be.fedict.lodtools.cpsv.proj.ActivityProjection;
 import be.fedict.lodtools.cpsv.proj.AddressProjection;
 import be.fedict.lodtools.cpsv.proj.AdministrationProjection;
 import be.fedict.lodtools.cpsv.proj.LinkProjection;
 import be.fedict.lodtools.cpsv.proj.ProcedureProjection;
-import be.fedict.lodtools.cpsv.proj.MunicipalityProjection;
 import be.fedict.lodtools.cpsv.proj.ResponsibleProjection;
-import be.fedict.lodtools.cpsv.vocab.ATU;
+import be.fedict.lodtools.cpsv.stax.StaxProcedureReader;
 import be.fedict.lodtools.cpsv.vocab.CPSV;
 import be.fedict.lodtools.cpsv.vocab.CPSVBE;
 import be.fedict.lodtools.cpsv.vocab.CV;
 import be.fedict.lodtools.cpsv.vocab.LOCN;
 
-import java.io.BufferedWriter;
 import java.io.File;
+import java.io.InputStream;
+import java.io.FileInputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.regex.Pattern;
 
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Model;
-import org.eclipse.rdf4j.model.Resource;
-import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.ValueFactory;
-import org.eclipse.rdf4j.model.impl.LinkedHashModel;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
 import org.eclipse.rdf4j.model.vocabulary.ORG;
 import org.eclipse.rdf4j.model.vocabulary.RDF;
 import org.eclipse.rdf4j.model.vocabulary.RDFS;
 import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
 import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,55 +88,41 @@ import org.xmlbeam.XBProjector;
 public class Main {
 	private final static Logger LOG = LoggerFactory.getLogger(Main.class);
  
-	private final static XBProjector proj = new XBProjector();
+	private final static ThreadLocal<XBProjector> proj = 
+								ThreadLocal.withInitial(XBProjector::new);
 	
     private final static ValueFactory F = SimpleValueFactory.getInstance();
    
     private static String domain = null;
      
-	private final static Set<IRI> Activities = new HashSet();
+	private final static Set<IRI> Activities = 
+								Collections.synchronizedSet(new HashSet<>());
+	
+	private static EliStage eli = null;
+	
+	private static boolean stax = false;
+	
+	private static StoreOutput store = null;
+	
+	private static Shard shard = null;
+	
+	private static ProcedureCache records = null;
+	
+	private static int parsers = 0;
+	
+	private static int queue = 0;
+	
+	private final static RegionIndex REGIONS = new RegionIndex();
+	
+	private final static String[] LANGS = new String[]{ "NL", "FR", "EN", "DE" };
 
 	/**
 	 * Process the list of cities and match to a complete region(s) in Belgium.
 	 * 
-	 * @param p list of mapped municipalities
+	 * @param p list of NIS codes of the municipalities
 	 */
-	private static List<IRI> regionalize(List<MunicipalityProjection> p) {
-		List<IRI> regions = new ArrayList<>();
-		// cheating: just count them
-		switch (p.size()) {
-			case 9:
-				regions.add(ATU.ID_GER);
-				break;
-			case 19:
-				regions.add(ATU.ID_BXL);
-				break;
-			case 253:
-				regions.add(ATU.ID_WAL_EX_GER);
-				break;
-			case 262:
-				regions.add(ATU.ID_WAL);
-				break;
-			case 281:
-				regions.add(ATU.ID_BXL);
-				regions.add(ATU.ID_WAL);
-				break;
-			case 308: 
-				regions.add(ATU.ID_VLA);
-				break;
-			case 327:
-				regions.add(ATU.ID_BXL);
-				regions.add(ATU.ID_VLA);
-				break;
-			case 589: 
-				regions.add(ATU.ID_BXL);
-				regions.add(ATU.ID_VLA);
-				regions.add(ATU.ID_WAL);
-				break;
-			default:
-				LOG.error("Not found for {}", p.size());
-		}
-		return regions;
+	private static List<IRI> regionalize(List<String> p) {
+		return REGIONS.regions(p);
 	}
 	
 
@@ -142,7 +141,7 @@ public class Main {
 		IRI cost = ConvertUtil.costID(price);
 		m.add(id, CV.HAS_COST, cost);
 		m.add(cost, RDFS.CLASS, CPSV.CLASS_COST);
-		m.add(cost, DCTERMS.DESCRIPTION, F.createLiteral(price, lang));
+		m.add(cost, DCTERMS.DESCRIPTION, F.createLiteral(LiteralNormalizer.normalize(price), lang));
 	}
 
 	/**
@@ -173,7 +172,7 @@ public class Main {
 		String url = l.getURL();
 		
 		if (desc != null && !desc.isEmpty()) {
-			desc = desc.replaceAll("<[^>]*>", "").trim();
+			desc = LiteralNormalizer.normalize(desc);
 			m.add(id, DCTERMS.TITLE, F.createLiteral(desc, lang));
 		}
 		if (url != null && !url.isEmpty()) {
@@ -248,8 +247,19 @@ public class Main {
 		}
 	}
 	
+	/**
+	 * Add responsible administration.
+	 * The links are added for every language variant, since variants may refer
+	 * to another administration, the model keeps only one copy of identical links.
+	 * 
+	 * @param m
+	 * @param id
+	 * @param ra
+	 * @param r
+	 * @param lang 
+	 */
 	private static void addAdministration(Model m, IRI id, AdministrationProjection ra, 
-										ResponsibleProjection r, String lang) {
+											ResponsibleProjection r, String lang) {
 		if (ra != null) {
 			IRI aid = ConvertUtil.adminID(ra.getBCE(), ra.getCode());
 			m.add(id, DCTERMS.PUBLISHER, aid);
@@ -265,17 +275,28 @@ public class Main {
 		}
 	}
 	
-	private static void addService(Model m, IRI id, ProcedureProjection p, String lang) {
-		m.add(id, RDFS.CLASS, CPSV.CLASS_CPSV);
-		m.add(id, DCTERMS.TITLE, F.createLiteral(p.getTitle(), lang));
-		m.add(id, DCTERMS.DESCRIPTION, F.createLiteral(p.getDesc(), lang));
-		m.add(id, DCTERMS.ABSTRACT, F.createLiteral(p.getSummary(), lang));
-		m.add(id, CPSVBE.APPLIES, F.createLiteral(p.getApplies(), lang));
-		m.add(id, CPSVBE.APPLIES_EXCEPT, F.createLiteral(p.getAppliesExcept(), lang));
+	private static void addService(Model m, IRI id, ProcedureProjection p, String lang, 
+																boolean shared) {
+		if (shared) {
+			m.add(id, RDFS.CLASS, CPSV.CLASS_CPSV);
+		}
+		m.add(id, DCTERMS.TITLE, 
+				F.createLiteral(LiteralNormalizer.normalize(p.getTitle()), lang));
+		m.add(id, DCTERMS.DESCRIPTION, 
+				F.createLiteral(LiteralNormalizer.normalize(p.getDesc()), lang));
+		m.add(id, DCTERMS.ABSTRACT, 
+				F.createLiteral(LiteralNormalizer.normalize(p.getSummary()), lang));
+		m.add(id, CPSVBE.APPLIES, 
+				F.createLiteral(LiteralNormalizer.normalize(p.getApplies()), lang));
+		m.add(id, CPSVBE.APPLIES_EXCEPT, 
+				F.createLiteral(LiteralNormalizer.normalize(p.getAppliesExcept()), lang));
 		m.add(id, DCTERMS.LANGUAGE, ConvertUtil.langID(lang));
 
-		for (IRI region: regionalize(p.getCities())) {
-			m.add(id, DCTERMS.SPATIAL, region);
+		if (shared) {
+			// municipalities are only read for the first variant
+			for (IRI region: regionalize(p.getCityCodes())) {
+				m.add(id, DCTERMS.SPATIAL, region);
+			}
 		}
 		
 		String event = p.getLifecycle();
@@ -302,42 +323,457 @@ public class Main {
 	 * @param m RDF model
 	 * @throws IOException 
 	 */
-	private static void processFile(File f, Model m) throws IOException {
+	public static void processFile(File f, Model m) throws IOException {
 		LOG.info("Reading XML file {}", f);
 					
-		ProcedureProjection p = proj.io().file(f).read(ProcedureProjection.class);
+		ProcedureProjection p = readFile(f, true);
 		if (p == null || p.getID() == null) {
 			LOG.warn("Not a procedure");
 			return;
 		}
+		convert(m, p, true);
+	}
+	
+	/**
+	 * Convert a procedure, adding info to the RDF model.
+	 * 
+	 * @param m RDF model
+	 * @param p procedure
+	 * @param shared also add language-independent parts
+	 */
+	private static void convert(Model m, ProcedureProjection p, boolean shared) {
 		IRI id = ConvertUtil.genericID("service", p.getID());
 		String lang = p.getLanguage().toLowerCase();
 	
-		addService(m, id, p, lang);
-		addActivities(m, id, p.getActivities());
+		addService(m, id, p, lang, shared);
+		if (shared) {
+			addActivities(m, id, p.getActivities());
+		}
 		addFramework(m, id, p.getLegal(), lang, p.getID());
 		addInput(m, id, p.getForms(), lang, p.getID());	
 	}
+	
+	/**
+	 * Read an EDRL / XML file
+	 * 
+	 * @param f file to read
+	 * @param shared also read language-independent parts
+	 * @return procedure
+	 * @throws IOException 
+	 */
+	private static ProcedureProjection readFile(File f, boolean shared) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+			return read(in, shared);
+		}
+	}
+	
+	/**
+	 * Read an EDRL / XML file from an input stream
+	 * 
+	 * @param in input stream
+	 * @param shared also read language-independent parts
+	 * @return procedure
+	 * @throws IOException 
+	 */
+	private static ProcedureProjection read(InputStream in, boolean shared) throws IOException {
+		long start = System.nanoTime();
+		ProcedureProjection p = stax ? StaxProcedureReader.read(in, shared) 
+					: proj.get().io().stream(in).read(ProcedureProjection.class);
+		Metrics.counter("parse.files").inc();
+		Metrics.timer("parse.latency").since(start);
+		return p;
+	}
+	
+	/**
+	 * Read a language variant of a procedure
+	 * 
+	 * @param src procedure source
+	 * @param lang language
+	 * @param name file name of the procedure
+	 * @param shared also read language-independent parts
+	 * @return procedure
+	 * @throws IOException 
+	 */
+	private static ProcedureProjection read(ProcedureSource src, String lang, String name, 
+												boolean shared) throws IOException {
+		if (records != null) {
+			return records.read(src, lang, name);
+		}
+		try (InputStream in = src.open(lang, name)) {
+			return read(in, shared);
+		}
+	}
+	
+	/**
+	 * Read all language variants of a procedure.
+	 * The first variant is read completely, the language-independent parts
+	 * of the other variants are skipped when they describe the same procedure.
+	 * 
+	 * @param src procedure source
+	 * @param name file name of the procedure
+	 * @return group of procedures
+	 * @throws IOException 
+	 */
+	private static ProcedureGroup readGroup(ProcedureSource src, String name) throws IOException {
+		ProcedureGroup g = new ProcedureGroup(name);
+		
+		for (String lang: LANGS) {
+			if (!src.exists(lang, name)) {
+				LOG.warn("No {} variant of {}", lang, name);
+				continue;
+			}
+			String f = src.location(lang, name);
+			LOG.info("Reading XML file {}", f);
+			
+			boolean first = (g.getID() == null);
+			ProcedureProjection p = read(src, lang, name, first);
+			if (p == null || p.getID() == null) {
+				LOG.warn("Not a procedure");
+				continue;
+			}
+			if (!first && !g.hasShared(p.getID())) {
+				LOG.warn("Procedure {} in {} does not match {}", p.getID(), f, g.getID());
+				g.add(lang, read(src, lang, name, true), true);
+			} else {
+				g.add(lang, p, first);
+			}
+		}
+		return g;
+	}
 
 	/**
-	 * Match ELI frameworks
+	 * Convert all language variants of a procedure into a new RDF model.
 	 * 
-	 * @param m RDF models
+	 * @param g group of procedures
+	 * @return RDF model
 	 */
-	private static void matchFrameworks(Model m) {
-		Model fws = m.filter(null, RDF.TYPE, CPSV.CLASS_FRAMEWORK);
+	private static Model map(ProcedureGroup g) {
+		long start = System.nanoTime();
+		Model m = new CompactModel();
+		for (ProcedureGroup.Variant v: g.getVariants()) {
+			convert(m, v.getProcedure(), v.isShared());
+		}
+		Metrics.counter("map.procedures").inc();
+		Metrics.sizes("map.triples").record(m.size());
+		Metrics.timer("map.latency").since(start);
+		return m;
+	}
+	
+	/**
+	 * Process all language variants of a procedure into a new RDF model.
+	 * 
+	 * @param src procedure source
+	 * @param name file name of the procedure
+	 * @param eli match legal frameworks to ELI 
+	 * @return RDF model
+	 * @throws IOException 
+	 */
+	private static Model processProcedure(ProcedureSource src, String name, boolean eli) 
+															throws IOException {
+		Model m = map(readGroup(src, name));
+		if (eli) {
+			matchFrameworks(m);
+		}
+		return m;
+	}
+	
+	/**
+	 * Callback for a converted procedure
+	 */
+	private interface ProcedureHandler {
+		/**
+		 * Handle the RDF model of a procedure
+		 * 
+		 * @param name file name of the procedure
+		 * @param m RDF model
+		 * @throws IOException 
+		 */
+		void handle(String name, Model m) throws IOException;
+	}
+	
+	/**
+	 * Process procedures, optionally using a {@link Pipeline} of parser, 
+	 * mapping and ELI threads.
+	 * Each procedure is converted into its own model, these models are passed
+	 * to the callback in the order of the list of files, so the result is 
+	 * the same as processing the files one by one.
+	 * 
+	 * @param base base input directory
+	 * @param lst list of procedure files
+	 * @param h callback
+	 * @param threads number of mapping threads
+	 * @param eli match legal frameworks per procedure
+	 * @throws IOException 
+	 */
+	private static void process(ProcedureSource src, List<String> lst, ProcedureHandler h, 
+									int threads, boolean eli) throws IOException {
+		if (threads <= 1 && parsers <= 1) {
+			for (String name: lst) {
+				h.handle(name, processProcedure(src, name, eli));
+			}
+			return;
+		}
+		Pipeline<ProcedureGroup,Model> p = new Pipeline<>(
+			(parsers > 0) ? parsers : threads, threads, (queue > 0) ? queue : threads * 4);
+		p.run(lst, name -> readGroup(src, name), Main::map, 
+				eli ? Main.eli::matchAsync : null, h::handle);
+	}
+	
+	/**
+	 * Process procedures, passing all statements to an RDF handler
+	 * 
+	 * @param base base input directory
+	 * @param lst list of procedure files
+	 * @param h RDF handler
+	 * @param threads number of worker threads
+	 * @param eli match legal frameworks per procedure
+	 * @throws IOException 
+	 */
+	private static void process(ProcedureSource src, List<String> lst, RDFHandler h, 
+									int threads, boolean eli) throws IOException {
+		process(src, lst, (name, m) -> m.forEach(h::handleStatement), threads, eli);
+	}
+	
+	/**
+	 * Write statements to an N-Triples file
+	 * 
+	 * @param f file
+	 * @param sts statements
+	 * @throws IOException 
+	 */
+	private static void writeNT(File f, Iterable<Statement> sts) throws IOException {
+		File tmp = new File(f.getPath() + ".tmp");
+		try (Writer w = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+			Rio.write(sts, w, RDFFormat.NTRIPLES);
+		}
+		Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Only convert new or changed procedures, using the triples of the
+	 * unchanged procedures from a previous run.
+	 * The statements added or removed since the previous run are written
+	 * to separate files, named after the output (e.g. cpsv-added.nt).
+	 * These are calculated per changed procedure,
+	 * statements about shared nodes are only included when they are new 
+	 * in or gone from the complete output.
+	 * 
+	 * @param base base input directory
+	 * @param lst list of procedure files
+	 * @param dirty names of possibly changed procedures, or null to check all
+	 * @param h RDF handler for the complete output
+	 * @param threads number of worker threads
+	 * @param state state directory
+	 * @param outDir output directory for the changes
+	 * @throws IOException 
+	 */
+	private static void processIncremental(ProcedureSource src, List<String> lst, 
+							Set<String> dirty, SharedNodeFilter h, int threads, File state, 
+							File outDir) throws IOException {
+		Manifest mf = new Manifest(state);
 		
-		for(Resource fw: fws.subjects()) {
-			Set<Value> vals = m.filter(fw, DCTERMS.TITLE, null).objects();
-			if (vals != null) {
-				String[] arr = vals.stream().map(Value::stringValue)
-											.toArray(String[]::new);
-				for	(String s: arr) {
-					Set<IRI> elis = EliMatcher.match(s);
-					elis.forEach(e -> m.add(fw, DCTERMS.IDENTIFIER, e));
-				}
+		Map<String,String> hashes = new HashMap<>();
+		List<String> changed = new ArrayList<>();
+		for (String name: lst) {
+			String hash = (dirty == null || dirty.contains(name) || mf.get(name) == null) 
+							? Manifest.hash(src, LANGS, name) : mf.get(name);
+			hashes.put(name, hash);
+			if (!hash.equals(mf.get(name)) || !mf.hasPart(name)) {
+				changed.add(name);
 			}
 		}
+		Set<String> gone = new HashSet<>(mf.names());
+		gone.removeAll(hashes.keySet());
+		LOG.info("{} procedures, {} new or changed, {} removed", 
+									lst.size(), changed.size(), gone.size());
+		
+		Model added = new CompactModel();
+		Model removed = new CompactModel();
+		
+		process(src, changed, (name, m) -> {
+			mf.update(name, m, added, removed);
+			mf.put(name, hashes.get(name));
+		}, threads, true);
+		
+		for (String name: gone) {
+			mf.remove(name, removed);
+		}
+		mf.sharedChanges(added, removed);
+
+		for (String name: lst) {
+			mf.readPart(name, h);
+		}
+		
+		writeNT(new File(outDir, outputName() + "-added.nt"), added);
+		writeNT(new File(outDir, outputName() + "-removed.nt"), removed);
+		mf.save();
+	}
+	
+	/**
+	 * Get the base name of the output file(s)
+	 * 
+	 * @return name of the shard, or cpsv when not sharded
+	 */
+	private static String outputName() {
+		return (shard != null) ? shard.getName() : "cpsv";
+	}
+	
+	/**
+	 * Create the output stage
+	 * 
+	 * @param opts command line options
+	 * @return output stage
+	 */
+	private static OutputStage output(Options opts) {
+		return new OutputStage(new File(opts.arg(1)), outputName(),
+						OutputStage.format(opts.get("format", "nt")),
+						OutputStage.Compression.get(opts.get("compress", "none")),
+						opts.getInt("split", 0) * 1024L * 1024L,
+						opts.getInt("writers", 2));
+	}
+	
+	/**
+	 * Convert the procedures and publish the output
+	 * 
+	 * @param opts command line options
+	 * @param src procedure source
+	 * @param threads number of worker threads
+	 * @param stream write each procedure as soon as it is converted
+	 * @param dirty names of changed procedures in incremental mode, or null to check all
+	 * @throws IOException 
+	 */
+	private static void convert(Options opts, ProcedureSource src, int threads, boolean stream, 
+											Set<String> dirty) throws IOException {
+		try (OutputStage out = output(opts)) {
+			RDFHandler w = out.handler();
+			if (store != null) {
+				w = new RDFHandlerWrapper(w, store.handler());
+			}
+			List<String> lst = src.list(LANGS[0]);
+			if (records != null) {
+				records.retain(lst);
+			}
+			if (shard != null) {
+				lst.removeIf(name -> !shard.contains(name));
+				LOG.info("Shard {} contains {} procedures", shard, lst.size());
+			}
+
+			if (opts.has("incremental") || opts.has("watch")) {
+				// shards writing to the same directory need their own state
+				String dir = (shard != null) ? shard.getName() + "-state" : "state";
+				File state = new File(opts.get("incremental", 
+										new File(opts.arg(1), dir).getPath()));
+				SharedNodeFilter h = new SharedNodeFilter(w);
+				h.startRDF();
+				processIncremental(src, lst, dirty, h, threads, state, new File(opts.arg(1)));
+				h.endRDF();
+			} else if (stream) {
+				// write each procedure as soon as it is converted
+				SharedNodeFilter h = new SharedNodeFilter(w);
+				h.startRDF();
+				process(src, lst, h, threads, true);
+				h.endRDF();
+				LOG.info("Dropped {} duplicate statements", h.getDropped());
+			} else {
+				Model m = new CompactModel();
+				process(src, lst, new StatementCollector(m), threads, false);
+				matchFrameworks(m);
+				Rio.write(m, w);
+			}
+			out.publish();
+		} finally {
+			if (store != null) {
+				// only has effect when the load did not finish
+				store.abort();
+			}
+		}
+	}
+	
+	/**
+	 * Wait until the JVM is shutting down, e.g. to keep the SPARQL endpoint running
+	 * 
+	 * @throws InterruptedException 
+	 */
+	private static void awaitShutdown() throws InterruptedException {
+		CountDownLatch stop = new CountDownLatch(1);
+		Thread main = Thread.currentThread();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			stop.countDown();
+			try {
+				main.join(30_000);
+			} catch (InterruptedException ex) {
+				// shutting down anyway
+			}
+		}));
+		LOG.info("Running until stopped");
+		stop.await();
+	}
+	
+	/**
+	 * Keep running, convert and republish when procedures are changed.
+	 * Only the changed procedures are converted again.
+	 * 
+	 * @param opts command line options
+	 * @param src procedure source, must be a directory
+	 * @param threads number of worker threads
+	 * @throws IOException 
+	 */
+	private static void watch(Options opts, ProcedureSource src, int threads) throws IOException {
+		if (!(src instanceof DirectorySource)) {
+			throw new IOException("Only directories can be watched");
+		}
+		long quiet = opts.getInt("watch", 2) * 1000L;
+		File base = ((DirectorySource) src).getBase();
+		
+		try (DirectoryWatcher dw = new DirectoryWatcher(base, LANGS, quiet)) {
+			Thread main = Thread.currentThread();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					dw.stop();
+					main.join(30_000);
+				} catch (IOException | InterruptedException ex) {
+					// shutting down anyway
+				}
+			}));
+			
+			convert(opts, src, threads, true, null);
+			dw.run(names -> {
+				eli.reset();
+				convert(opts, src, threads, true, names);
+			});
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Merge the output files of the shards into one output
+	 * 
+	 * @param opts command line options
+	 * @throws IOException 
+	 */
+	private static void merge(Options opts) throws IOException {
+		List<String> names = new ArrayList<>();
+		for (int i = 2; i < opts.count(); i++) {
+			names.add(opts.arg(i));
+		}
+		List<File> files = Shard.files(names);
+		if (files.isEmpty()) {
+			throw new IOException("No shard files to merge");
+		}
+		try (OutputStage out = output(opts)) {
+			Shard.merge(files, out.handler());
+			out.publish();
+		}
+	}
+	
+	/**
+	 * Match ELI frameworks
+	 * 
+	 * @param m RDF models
+	 */
+	private static void matchFrameworks(Model m) {
+		eli.match(m);
 	}
 	
     /**
@@ -347,41 +783,125 @@ public class Main {
      * @throws IOException 
      */
     public static void main(String[] args) throws IOException {
-        if (args.length < 2) {
-            System.out.println("Usage: cpsv <input_dir> <output_dir> [IRI_domain]");
+        Options opts = Options.parse(args);
+		// reset the state of a previous run in the same JVM
+		shard = null;
+		records = null;
+		store = null;
+		if (opts.count() > 2 && opts.arg(0).equals("merge")) {
+			merge(opts);
+			return;
+		}
+        if (opts.count() < 2) {
+            System.out.println("Usage: cpsv <input_dir|archive> <output_dir> [IRI_domain] [--threads=N] [--parse-threads=N] [--queue=N] [--stream]" 
+					+ " [--eli-cache=file] [--eli-ttl=days] [--eli-ttl-miss=days] [--offline]"
+					+ " [--eli-url=url] [--eli-threads=N] [--eli-batch=N] [--eli-rate=req/s] [--eli-timeout=s]"
+					+ " [--incremental[=state_dir]] [--reader=xmlbeam|stax]"
+					+ " [--format=nt|nq|brf] [--compress=none|gzip|zstd] [--split=MB] [--writers=N]"
+					+ " [--metrics=file.json|file.prom] [--watch[=seconds]]"
+					+ " [--store=memory|native:dir] [--store-indexes=spoc,posc] [--sparql=port]"
+					+ " [--io=stream|mmap|pooled] [--shard=i/N (i = 1..N)] [--cache=dir]"
+					+ " [--id-hash=sha1|murmur3]");
+			System.out.println("       cpsv merge <output_dir> <shard_file|shard_dir>..."
+					+ " [--format=nt|nq|brf] [--compress=none|gzip|zstd] [--split=MB]");
             System.exit(-1);
         }
         
-        File base = new File(args[0]);
-        File outf = new File(args[1], "cpsv.nt");
+        File base = new File(opts.arg(0));
+		if (opts.has("shard")) {
+			try {
+				shard = Shard.parse(opts.get("shard", ""));
+			} catch (IllegalArgumentException ex) {
+				System.out.println(ex.getMessage());
+				System.exit(-1);
+			}
+		}
+		File outf = OutputStage.file(new File(opts.arg(1)), outputName(),
+						OutputStage.format(opts.get("format", "nt")),
+						OutputStage.Compression.get(opts.get("compress", "none")), 0);
         
-        if (args.length > 2 && args[2].startsWith("http")) {
-            domain = args[2];
+        if (opts.count() > 2 && opts.arg(2).startsWith("http")) {
+            domain = opts.arg(2);
         } else {
             domain = "http://pubserv.belgif.be";
         }
+		int threads = opts.getInt("threads", 1);
+		parsers = opts.getInt("parse-threads", 0);
+		queue = opts.getInt("queue", 0);
+		boolean stream = opts.has("stream");
+		// the procedure cache implies the StAX reader, unless another reader is requested
+		stax = opts.get("reader", opts.has("cache") ? "stax" : "xmlbeam").equals("stax");
+		ConvertUtil.setIdHash(ConvertUtil.IdHash.get(opts.get("id-hash", "sha1")));
 		
         LOG.info("--- START ---");
-		LOG.info("Params in = {}, out = {}, domain = {}", base, outf, domain);
+		LOG.info("Params in = {}, out = {}, domain = {}, threads = {}, stream = {}, stax = {}", 
+									base, outf, domain, threads, stream, stax);
 		
-        try (BufferedWriter w = new BufferedWriter(new FileWriter(outf))){
-			Model m = new LinkedHashModel();
-
-			String [] langs = new String[]{ "NL", "FR", "EN", "DE" };
-			File[] lst = new File(base, langs[0]).listFiles();
-
-	        for(File f: lst) {
-				for (String lang: langs) {
-					File langDir = new File(base, lang);
-					File file = new File(langDir, f.getName());
-					processFile(file, m);
+		EliCache cache = null;
+		if (opts.has("eli-cache")) {
+			cache = new EliCache(new File(opts.get("eli-cache", "eli-cache.tsv")),
+									opts.getInt("eli-ttl", 30), 
+									opts.getInt("eli-ttl-miss", 7),
+									opts.has("offline"));
+			EliMatcher.setCache(cache);
+		}
+		EliMatcher.setOffline(opts.has("offline"));
+		EliMatcher.setEndpoint(opts.get("eli-url", "https://id.belgium.be"));
+		EliMatcher.setTimeout(opts.getInt("eli-timeout", 30) * 1000);
+		EliMatcher.setRateLimit(Double.parseDouble(opts.get("eli-rate", "5")));
+		eli = new EliStage(opts.getInt("eli-threads", 4), opts.getInt("eli-batch", 16));
+		
+		SparqlEndpoint sparql = null;
+		ProcedureSource src = ArchiveSource.isArchive(base) ? new ArchiveSource(base)
+				: new DirectorySource(base, 
+						DirectorySource.Mode.valueOf(opts.get("io", "stream").toUpperCase(Locale.ROOT)));
+		
+        try {
+			if (opts.has("store") || opts.has("sparql")) {
+				store = StoreOutput.create(opts.get("store", "memory"), 
+										opts.get("store-indexes", "spoc,posc"));
+			}
+			if (opts.has("cache")) {
+				if (!stax) {
+					// cached records are always parsed by the StAX reader
+					LOG.warn("Procedure cache can only be used with --reader=stax, ignored");
+				} else {
+					records = new ProcedureCache(new File(opts.get("cache", "cache")));
 				}
-            }
-			
-			matchFrameworks(m);
-						
-			Rio.write(m, w, RDFFormat.NTRIPLES);
-        }
+			}
+			if (opts.has("sparql")) {
+				sparql = new SparqlEndpoint(store.getRepository(), opts.getInt("sparql", 8080));
+			}
+			if (opts.has("watch")) {
+				watch(opts, src, threads);
+			} else {
+				convert(opts, src, threads, stream, null);
+				if (sparql != null) {
+					awaitShutdown();
+				}
+			}
+        } catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (sparql != null) {
+				sparql.close();
+			}
+			if (store != null) {
+				store.close();
+			}
+			if (records != null) {
+				records.close();
+			}
+			src.close();
+			eli.close();
+			if (cache != null) {
+				cache.close();
+			}
+		}
+		ConvertUtil.getCaches().forEach(c -> LOG.info("IRI cache {}", c));
+		if (opts.has("metrics")) {
+			Metrics.write(new File(opts.get("metrics", "metrics.json")));
+		}
 		LOG.info("--- END ---");
     }
 }
@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import be.fedict.lodtools.cpsv.input.ProcedureSource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+
+/**
+ * State of an incremental conversion: content hash of each procedure, 
+ * the triples produced for that procedure (as binary RDF), and the number
+ * of procedures referring to each statement about a shared node, 
+ * stored in a directory.
+ * 
+ * The reference counts are used to calculate the exact changes compared to 
+ * the previous output: statements about shared nodes (costs, addresses...)
+ * are only added when no other procedure already had them, and only removed
+ * when no procedure has them anymore.
+ * 
+ * Changes are only committed by {@link #save()}: the triples of changed 
+ * procedures are written to pending files, and a commit marker is written
+ * when the new manifest and reference counts are complete. If the converter 
+ * stops before that, the pending files are discarded on the next run, 
+ * otherwise the commit is completed, so the hashes, triples and reference counts 
+ * always belong to the same run.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Manifest {
+	private final static String MANIFEST = "manifest.tsv";
+	private final static String PARTS = "parts";
+	private final static String SHARED = "shared.tsv";
+	private final static String COMMIT = "commit.tsv";
+	private final static String TMP = ".tmp";
+	
+	private final File dir;
+	private final Map<String,String> hashes = new LinkedHashMap<>();
+	private final Map<Long,Integer> refs = new HashMap<>();
+	// statements about shared nodes changed during this run, with the count before the run
+	private final Map<Long,Statement> touched = new HashMap<>();
+	private final Map<Long,Integer> before = new HashMap<>();
+	private final Set<String> deleted = new HashSet<>();
+	
+	/**
+	 * Calculate SHA-1 hash over the content of all language variants
+	 * 
+	 * @param src procedure source
+	 * @param langs language subdirectories
+	 * @param name file name of the procedure
+	 * @return hex encoded hash
+	 * @throws IOException 
+	 */
+	public static String hash(ProcedureSource src, String[] langs, String name) throws IOException {
+		MessageDigest md = DigestUtils.getSha1Digest();
+		for (String lang: langs) {
+			md.update(lang.getBytes(StandardCharsets.UTF_8));
+			if (src.exists(lang, name)) {
+				try (InputStream in = src.open(lang, name)) {
+					DigestUtils.updateDigest(md, in);
+				}
+			} else {
+				md.update((byte) 0);
+			}
+		}
+		return Hex.encodeHexString(md.digest());
+	}
+	
+	/**
+	 * Get the hash of a procedure from the previous run
+	 * 
+	 * @param name file name of the procedure
+	 * @return hash or null
+	 */
+	public String get(String name) {
+		return hashes.get(name);
+	}
+	
+	/**
+	 * Set the hash of a procedure
+	 * 
+	 * @param name file name of the procedure
+	 * @param hash hex encoded hash
+	 */
+	public void put(String name, String hash) {
+		hashes.put(name, hash);
+	}
+	
+	/**
+	 * Remove procedure from manifest, and delete its triples
+	 * 
+	 * @param name file name of the procedure
+	 * @param removed model to add the statements to that are no longer in the output
+	 * @throws IOException 
+	 */
+	public void remove(String name, Model removed) throws IOException {
+		for (Statement st: readPart(name)) {
+			if (SharedNodeFilter.isShared(st)) {
+				ref(st, -1);
+			} else {
+				removed.add(st);
+			}
+		}
+		hashes.remove(name);
+		deleted.add(name);
+		Files.deleteIfExists(pending(name).toPath());
+	}
+	
+	/**
+	 * Replace the triples of a procedure, collecting the changes
+	 * 
+	 * @param name file name of the procedure
+	 * @param m new triples of the procedure
+	 * @param added model to add the statements to that are new in the output
+	 * @param removed model to add the statements to that are no longer in the output
+	 * @throws IOException 
+	 */
+	public void update(String name, Model m, Model added, Model removed) throws IOException {
+		Model old = readPart(name);
+		for (Statement st: m) {
+			if (!old.contains(st)) {
+				if (SharedNodeFilter.isShared(st)) {
+					ref(st, 1);
+				} else {
+					added.add(st);
+				}
+			}
+		}
+		for (Statement st: old) {
+			if (!m.contains(st)) {
+				if (SharedNodeFilter.isShared(st)) {
+					ref(st, -1);
+				} else {
+					removed.add(st);
+				}
+			}
+		}
+		writePart(name, m);
+	}
+	
+	/**
+	 * Add the statements about shared nodes that were not referenced before
+	 * this run, or are not referenced anymore.
+	 * 
+	 * @param added model to add the statements to that are new in the output
+	 * @param removed model to add the statements to that are no longer in the output
+	 */
+	public void sharedChanges(Model added, Model removed) {
+		for (Map.Entry<Long,Statement> e: touched.entrySet()) {
+			int was = before.get(e.getKey());
+			int now = refs.getOrDefault(e.getKey(), 0);
+			if (was == 0 && now > 0) {
+				added.add(e.getValue());
+			} else if (was > 0 && now == 0) {
+				removed.add(e.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Change the number of procedures referring to a statement about a shared node
+	 * 
+	 * @param st statement
+	 * @param delta 1 or -1
+	 */
+	private void ref(Statement st, int delta) {
+		long fp = SharedNodeFilter.fingerprint(st);
+		int count = refs.getOrDefault(fp, 0);
+		touched.putIfAbsent(fp, st);
+		before.putIfAbsent(fp, count);
+		if (count + delta > 0) {
+			refs.put(fp, count + delta);
+		} else {
+			refs.remove(fp);
+		}
+	}
+	
+	/**
+	 * Count the references to shared nodes in all procedures, 
+	 * for state directories written by a previous version
+	 * 
+	 * @throws IOException 
+	 */
+	private void countRefs() throws IOException {
+		for (String name: hashes.keySet()) {
+			readPart(name, new AbstractRDFHandler() {
+				@Override
+				public void handleStatement(Statement st) {
+					if (SharedNodeFilter.isShared(st)) {
+						refs.merge(SharedNodeFilter.fingerprint(st), 1, Integer::sum);
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Get the names of all procedures
+	 * 
+	 * @return set of names
+	 */
+	public Set<String> names() {
+		return hashes.keySet();
+	}
+	
+	/**
+	 * Get the file containing the triples of a procedure
+	 * 
+	 * @param name file name of the procedure
+	 * @return file
+	 */
+	private File part(String name) {
+		return new File(new File(dir, PARTS), name + ".brf");
+	}
+	
+	/**
+	 * Get the file containing the triples of a procedure written during this run,
+	 * not yet committed
+	 * 
+	 * @param name file name of the procedure
+	 * @return file
+	 */
+	private File pending(String name) {
+		return new File(new File(dir, PARTS), name + ".brf" + TMP);
+	}
+	
+	/**
+	 * Get the N-Triples file written by previous versions
+	 * 
+	 * @param name file name of the procedure
+	 * @return file
+	 */
+	private File legacyPart(String name) {
+		return new File(new File(dir, PARTS), name + ".nt");
+	}
+	
+	/**
+	 * Check if the triples of a procedure are available
+	 * 
+	 * @param name file name of the procedure
+	 * @return true if available
+	 */
+	public boolean hasPart(String name) {
+		return pending(name).exists() || part(name).exists() || legacyPart(name).exists();
+	}
+	
+	/**
+	 * Read the triples of a procedure and pass them to an RDF handler
+	 * 
+	 * @param name file name of the procedure
+	 * @param h RDF handler, startRDF and endRDF are not called
+	 * @throws IOException 
+	 */
+	public void readPart(String name, RDFHandler h) throws IOException {
+		File f = pending(name);
+		RDFFormat fmt = RDFFormat.BINARY;
+		if (!f.exists()) {
+			f = part(name);
+		}
+		if (!f.exists()) {
+			f = legacyPart(name);
+			fmt = RDFFormat.NTRIPLES;
+			if (!f.exists()) {
+				return;
+			}
+		}
+		try (InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+			RDFParser p = Rio.createParser(fmt);
+			p.setRDFHandler(new AbstractRDFHandler() {
+				@Override
+				public void handleStatement(Statement st) {
+					h.handleStatement(st);
+				}
+			});
+			p.parse(in, Consts.PUBSERV_BELGIF);
+		}
+	}
+	
+	/**
+	 * Read the triples of a procedure
+	 * 
+	 * @param name file name of the procedure
+	 * @return RDF model, empty if not found
+	 * @throws IOException 
+	 */
+	public Model readPart(String name) throws IOException {
+		Model m = new CompactModel();
+		readPart(name, new StatementCollector(m));
+		return m;
+	}
+	
+	/**
+	 * Write the triples of a procedure to a pending file
+	 * 
+	 * @param name file name of the procedure
+	 * @param m RDF model
+	 * @throws IOException 
+	 */
+	private void writePart(String name, Model m) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(pending(name)))) {
+			Rio.write(m, out, RDFFormat.BINARY);
+		}
+	}
+	
+	/**
+	 * Move a file, if it exists
+	 * 
+	 * @param from source file
+	 * @param to destination file
+	 * @throws IOException 
+	 */
+	private static void move(File from, File to) throws IOException {
+		if (from.exists()) {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Complete a commit: replace the triples of changed procedures, 
+	 * delete the triples of removed procedures, and replace the manifest 
+	 * and reference counts.
+	 * Can be repeated when the converter stopped during a commit.
+	 * 
+	 * @throws IOException 
+	 */
+	private void commit() throws IOException {
+		File marker = new File(dir, COMMIT);
+		for (String name: Files.readAllLines(marker.toPath(), StandardCharsets.UTF_8)) {
+			Files.deleteIfExists(part(name).toPath());
+			Files.deleteIfExists(legacyPart(name).toPath());
+		}
+		File[] files = new File(dir, PARTS).listFiles((d, n) -> n.endsWith(".brf" + TMP));
+		for (File f: (files != null) ? files : new File[0]) {
+			String name = f.getName().substring(0, f.getName().length() - ".brf".length() 
+																	- TMP.length());
+			move(f, part(name));
+			Files.deleteIfExists(legacyPart(name).toPath());
+		}
+		move(new File(dir, SHARED + TMP), new File(dir, SHARED));
+		move(new File(dir, MANIFEST + TMP), new File(dir, MANIFEST));
+		Files.delete(marker.toPath());
+	}
+	
+	/**
+	 * Discard the pending changes of a run that was stopped before the commit
+	 * 
+	 * @throws IOException 
+	 */
+	private void rollback() throws IOException {
+		File[] files = new File(dir, PARTS).listFiles((d, n) -> n.endsWith(TMP));
+		for (File f: (files != null) ? files : new File[0]) {
+			Files.delete(f.toPath());
+		}
+		Files.deleteIfExists(new File(dir, SHARED + TMP).toPath());
+		Files.deleteIfExists(new File(dir, MANIFEST + TMP).toPath());
+		Files.deleteIfExists(new File(dir, COMMIT + TMP).toPath());
+	}
+	
+	/**
+	 * Save the manifest, committing all changes of this run
+	 * 
+	 * @throws IOException 
+	 */
+	public void save() throws IOException {
+		try (Writer w = Files.newBufferedWriter(new File(dir, SHARED + TMP).toPath(), 
+														StandardCharsets.UTF_8)) {
+			for (Map.Entry<Long,Integer> e: refs.entrySet()) {
+				w.write(Long.toHexString(e.getKey()));
+				w.write('\t');
+				w.write(Integer.toString(e.getValue()));
+				w.write('\n');
+			}
+		}
+		try (Writer w = Files.newBufferedWriter(new File(dir, MANIFEST + TMP).toPath(), 
+														StandardCharsets.UTF_8)) {
+			for (Map.Entry<String,String> e: hashes.entrySet()) {
+				w.write(e.getKey());
+				w.write('\t');
+				w.write(e.getValue());
+				w.write('\n');
+			}
+		}
+		// from here on, the commit is completed on the next run if it is interrupted
+		File marker = new File(dir, COMMIT + TMP);
+		Files.write(marker.toPath(), deleted, StandardCharsets.UTF_8);
+		move(marker, new File(dir, COMMIT));
+		commit();
+		deleted.clear();
+	}
+	
+	/**
+	 * Constructor, reads the manifest from a previous run, if any.
+	 * 
+	 * @param dir state directory, will be created if it doesn't exist
+	 * @throws IOException 
+	 */
+	public Manifest(File dir) throws IOException {
+		this.dir = dir;
+		Files.createDirectories(new File(dir, PARTS).toPath());
+		if (new File(dir, COMMIT).exists()) {
+			commit();
+		} else {
+			rollback();
+		}
+		
+		File f = new File(dir, MANIFEST);
+		if (f.exists()) {
+			try (BufferedReader r = Files.newBufferedReader(f.toPath(), 
+														StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = r.readLine()) != null) {
+					String[] parts = line.split("\t");
+					if (parts.length == 2) {
+						hashes.put(parts[0], parts[1]);
+					}
+				}
+			}
+		}
+		
+		File shared = new File(dir, SHARED);
+		if (shared.exists()) {
+			try (BufferedReader r = Files.newBufferedReader(shared.toPath(), 
+															StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = r.readLine()) != null) {
+					String[] parts = line.split("\t");
+					if (parts.length == 2) {
+						refs.put(Long.parseUnsignedLong(parts[0], 16), 
+								Integer.parseInt(parts[1]));
+					}
+				}
+			}
+		} else {
+			countRefs();
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simple registry of counters and histograms, to see where time goes 
+ * during a conversion.
+ * 
+ * Metrics are kept for the entire run and can be written as JSON or 
+ * in the Prometheus text format at the end.
+ * Names use dots, which are replaced by underscores for Prometheus.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Metrics {
+	// latency in seconds
+	private final static double[] LATENCY = new double[]{ 
+		0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30 };
+	
+	// sizes, e.g. number of triples
+	private final static double[] SIZE = new double[]{ 
+		10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+	
+	private final static Map<String,Counter> COUNTERS = new ConcurrentSkipListMap<>();
+	private final static Map<String,Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+	
+	/**
+	 * Monotonic counter
+	 */
+	public static class Counter {
+		private final LongAdder count = new LongAdder();
+		
+		/**
+		 * Increment by one
+		 */
+		public void inc() {
+			count.increment();
+		}
+		
+		/**
+		 * Increment
+		 * 
+		 * @param n value to add
+		 */
+		public void inc(long n) {
+			count.add(n);
+		}
+		
+		/**
+		 * Get current value
+		 * 
+		 * @return value
+		 */
+		public long get() {
+			return count.sum();
+		}
+	}
+	
+	/**
+	 * Histogram with fixed buckets, also keeping the count and the sum
+	 */
+	public static class Histogram {
+		private final double[] bounds;
+		private final AtomicLongArray buckets;
+		private final LongAdder count = new LongAdder();
+		private final DoubleAdder sum = new DoubleAdder();
+		
+		/**
+		 * Record a value
+		 * 
+		 * @param value value
+		 */
+		public void record(double value) {
+			int i = 0;
+			while (i < bounds.length && value > bounds[i]) {
+				i++;
+			}
+			buckets.incrementAndGet(i);
+			count.increment();
+			sum.add(value);
+		}
+		
+		/**
+		 * Record the time since a start time
+		 * 
+		 * @param start start time, as returned by System.nanoTime()
+		 */
+		public void since(long start) {
+			record((System.nanoTime() - start) / 1e9);
+		}
+		
+		/**
+		 * Get number of recorded values
+		 * 
+		 * @return count
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+		
+		/**
+		 * Get sum of all recorded values
+		 * 
+		 * @return sum
+		 */
+		public double getSum() {
+			return sum.sum();
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param bounds upper bounds of the buckets
+		 */
+		private Histogram(double[] bounds) {
+			this.bounds = bounds;
+			this.buckets = new AtomicLongArray(bounds.length + 1);
+		}
+	}
+	
+	/**
+	 * Get or create a counter
+	 * 
+	 * @param name name of the counter
+	 * @return counter
+	 */
+	public static Counter counter(String name) {
+		return COUNTERS.computeIfAbsent(name, k -> new Counter());
+	}
+	
+	/**
+	 * Get or create a histogram for latencies, in seconds
+	 * 
+	 * @param name name of the histogram
+	 * @return histogram
+	 */
+	public static Histogram timer(String name) {
+		return HISTOGRAMS.computeIfAbsent(name, k -> new Histogram(LATENCY));
+	}
+	
+	/**
+	 * Get or create a histogram for sizes
+	 * 
+	 * @param name name of the histogram
+	 * @return histogram
+	 */
+	public static Histogram sizes(String name) {
+		return HISTOGRAMS.computeIfAbsent(name, k -> new Histogram(SIZE));
+	}
+	
+	/**
+	 * Format a double in a locale-independent way
+	 * 
+	 * @param d value
+	 * @return string
+	 */
+	private static String fmt(double d) {
+		return BigDecimal.valueOf(d).stripTrailingZeros().toPlainString();
+	}
+	
+	/**
+	 * Write metrics in Prometheus text format
+	 * 
+	 * @param w writer
+	 * @throws IOException 
+	 */
+	public static void writePrometheus(Writer w) throws IOException {
+		for (Map.Entry<String,Counter> e: COUNTERS.entrySet()) {
+			String name = e.getKey().replace('.', '_');
+			w.write("# TYPE " + name + " counter\n");
+			w.write(name + " " + e.getValue().get() + "\n");
+		}
+		for (Map.Entry<String,Histogram> e: HISTOGRAMS.entrySet()) {
+			String name = e.getKey().replace('.', '_');
+			Histogram h = e.getValue();
+			w.write("# TYPE " + name + " histogram\n");
+			long cumul = 0;
+			for (int i = 0; i <= h.bounds.length; i++) {
+				cumul += h.buckets.get(i);
+				String le = (i < h.bounds.length) ? fmt(h.bounds[i]) : "+Inf";
+				w.write(name + "_bucket{le=\"" + le + "\"} " + cumul + "\n");
+			}
+			w.write(name + "_sum " + fmt(h.getSum()) + "\n");
+			w.write(name + "_count " + h.getCount() + "\n");
+		}
+	}
+	
+	/**
+	 * Write metrics as JSON
+	 * 
+	 * @param w writer
+	 * @throws IOException 
+	 */
+	public static void writeJSON(Writer w) throws IOException {
+		w.write("{\n  \"counters\": {");
+		String sep = "\n";
+		for (Map.Entry<String,Counter> e: COUNTERS.entrySet()) {
+			w.write(sep + "    \"" + e.getKey() + "\": " + e.getValue().get());
+			sep = ",\n";
+		}
+		w.write("\n  },\n  \"histograms\": {");
+		sep = "\n";
+		for (Map.Entry<String,Histogram> e: HISTOGRAMS.entrySet()) {
+			Histogram h = e.getValue();
+			w.write(sep + "    \"" + e.getKey() + "\": { \"count\": " + h.getCount() 
+						+ ", \"sum\": " + fmt(h.getSum()) + ", \"buckets\": {");
+			for (int i = 0; i <= h.bounds.length; i++) {
+				String le = (i < h.bounds.length) ? fmt(h.bounds[i]) : "+Inf";
+				w.write((i > 0 ? ", " : " ") + "\"" + le + "\": " + h.buckets.get(i));
+			}
+			w.write(" } }");
+			sep = ",\n";
+		}
+		w.write("\n  }\n}\n");
+	}
+	
+	/**
+	 * Write metrics to a file, using Prometheus text format when the file
+	 * name ends with .prom, JSON otherwise.
+	 * 
+	 * @param f output file
+	 * @throws IOException 
+	 */
+	public static void write(File f) throws IOException {
+		try (Writer w = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
+			if (f.getName().endsWith(".prom")) {
+				writePrometheus(w);
+			} else {
+				writeJSON(w);
+			}
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simple command line parser: positional arguments and --name[=value] options.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Options {
+	private final List<String> args = new ArrayList<>();
+	private final Map<String,String> opts = new HashMap<>();
+	
+	/**
+	 * Get positional argument
+	 * 
+	 * @param i position
+	 * @return argument or null
+	 */
+	public String arg(int i) {
+		return (i < args.size()) ? args.get(i) : null;
+	}
+	
+	/**
+	 * Get number of positional arguments
+	 * 
+	 * @return number of arguments
+	 */
+	public int count() {
+		return args.size();
+	}
+	
+	/**
+	 * Check if an option was set
+	 * 
+	 * @param name option name, without dashes
+	 * @return true if set
+	 */
+	public boolean has(String name) {
+		return opts.containsKey(name);
+	}
+	
+	/**
+	 * Get the value of an option
+	 * 
+	 * @param name option name, without dashes
+	 * @param def default value
+	 * @return value or default
+	 */
+	public String get(String name, String def) {
+		String val = opts.get(name);
+		return (val != null && !val.isEmpty()) ? val : def;
+	}
+	
+	/**
+	 * Get the integer value of an option
+	 * 
+	 * @param name option name, without dashes
+	 * @param def default value
+	 * @return value or default
+	 */
+	public int getInt(String name, int def) {
+		String val = get(name, null);
+		return (val != null) ? Integer.parseInt(val) : def;
+	}
+	
+	/**
+	 * Parse command line arguments
+	 * 
+	 * @param arr arguments
+	 * @return options
+	 */
+	public static Options parse(String[] arr) {
+		Options o = new Options();
+		for (String s: arr) {
+			if (s.startsWith("--")) {
+				int pos = s.indexOf('=');
+				if (pos > 0) {
+					o.opts.put(s.substring(2, pos), s.substring(pos + 1));
+				} else {
+					o.opts.put(s.substring(2), "");
+				}
+			} else {
+				o.args.add(s);
+			}
+		}
+		return o;
+	}
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write the converted statements to one or more (compressed) files.
+ * 
+ * Output can be split into shards of a maximum (uncompressed) size,
+ * each shard is serialized and compressed by a pool of writer threads.
+ * Shards are numbered in the order of the statements, so concatenating
+ * N-Triples shards gives the same result as writing a single file.
+ * 
+ * Files are written to a temporary file first, and only replace the previous 
+ * output when the conversion was successful.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class OutputStage implements AutoCloseable {
+	private final static Logger LOG = LoggerFactory.getLogger(OutputStage.class);
+	
+	private final static int BUFSIZE = 64 * 1024;
+	
+	/**
+	 * Compression of the output file(s)
+	 */
+	public enum Compression { 
+		NONE(""), GZIP(".gz"), ZSTD(".zst");
+		
+		private final String ext;
+		
+		/**
+		 * Get compression method from name
+		 * 
+		 * @param name none, gzip or zstd
+		 * @return compression
+		 */
+		public static Compression get(String name) {
+			return valueOf(name.toUpperCase(Locale.ROOT));
+		}
+		
+		Compression(String ext) {
+			this.ext = ext;
+		}
+	}
+	
+	private final File dir;
+	private final String name;
+	private final RDFFormat fmt;
+	private final Compression comp;
+	private final long split;
+	private final int writers;
+	
+	private OutputStream out = null;
+	private ShardHandler shards = null;
+	private boolean published = false;
+
+	/**
+	 * Get RDF format from short name
+	 * 
+	 * @param name nt, nq or brf
+	 * @return RDF format
+	 */
+	public static RDFFormat format(String name) {
+		switch(name) {
+			case "nt": 
+				return RDFFormat.NTRIPLES;
+			case "nq": 
+				return RDFFormat.NQUADS;
+			case "brf": 
+			case "binary": 
+				return RDFFormat.BINARY;
+			default:
+				throw new IllegalArgumentException("Unsupported format " + name);
+		}
+	}
+	
+	/**
+	 * Open a buffered, compressed output stream
+	 * 
+	 * @param f file
+	 * @param comp compression
+	 * @return output stream
+	 * @throws IOException 
+	 */
+	public static OutputStream open(File f, Compression comp) throws IOException {
+		OutputStream os = new FileOutputStream(f);
+		switch(comp) {
+			case GZIP:
+				return new GZIPOutputStream(os, BUFSIZE);
+			case ZSTD:
+				return new BufferedOutputStream(new ZstdOutputStream(os), BUFSIZE);
+			default:
+				return new BufferedOutputStream(os, BUFSIZE);
+		}
+	}
+	
+	/**
+	 * Get the file name of the output or of a shard
+	 * 
+	 * @param dir output directory
+	 * @param name base name
+	 * @param fmt RDF format
+	 * @param comp compression
+	 * @param shard shard number, or 0 when not sharded
+	 * @return file
+	 */
+	public static File file(File dir, String name, RDFFormat fmt, Compression comp, 
+																	int shard) {
+		String n = (shard > 0) ? String.format("%s-%04d", name, shard) : name;
+		return new File(dir, n + "." + fmt.getDefaultFileExtension() + comp.ext);
+	}
+	
+	/**
+	 * Get the file name of the output or of a shard
+	 * 
+	 * @param shard shard number, or 0 when not sharded
+	 * @return file
+	 */
+	public File file(int shard) {
+		return file(dir, name, fmt, comp, shard);
+	}
+	
+	/**
+	 * Delete shards from a previous run, starting at a shard number
+	 * 
+	 * @param first first shard number to delete
+	 * @throws IOException 
+	 */
+	private void deleteShards(int first) throws IOException {
+		for (int i = first; file(i).exists(); i++) {
+			Files.delete(file(i).toPath());
+		}
+	}
+	
+	/**
+	 * Get the temporary file, used while writing
+	 * 
+	 * @param f output file
+	 * @return temporary file
+	 */
+	private static File tmp(File f) {
+		return new File(f.getParentFile(), "." + f.getName() + ".tmp");
+	}
+	
+	/**
+	 * Move a temporary file to its final name, atomically if possible
+	 * 
+	 * @param f output file
+	 * @throws IOException 
+	 */
+	private static void move(File f) throws IOException {
+		try {
+			Files.move(tmp(f).toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, 
+												StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(tmp(f).toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Get the RDF handler for writing the statements.
+	 * 
+	 * @return RDF handler
+	 * @throws IOException 
+	 */
+	public RDFHandler handler() throws IOException {
+		if (split > 0) {
+			shards = new ShardHandler();
+			return new TimedHandler(shards);
+		}
+		out = open(tmp(file(0)), comp);
+		return new TimedHandler(Rio.createWriter(fmt, out));
+	}
+	
+	/**
+	 * Replace the previous output with the newly written file(s).
+	 * Shards left from a previous run with more shards are removed, as is
+	 * a single file when writing shards and vice versa.
+	 * 
+	 * @throws IOException 
+	 */
+	public void publish() throws IOException {
+		if (out != null) {
+			out.close();
+			move(file(0));
+			deleteShards(1);
+		}
+		if (shards != null) {
+			int n = shards.written.size();
+			for (int i = 1; i <= n; i++) {
+				move(file(i));
+			}
+			deleteShards(n + 1);
+			Files.deleteIfExists(file(0).toPath());
+		}
+		published = true;
+		LOG.info("Published output in {}", dir);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (out != null) {
+			out.close();
+		}
+		if (shards != null) {
+			shards.pool.shutdownNow();
+		}
+		if (!published) {
+			// conversion failed, keep the previous output
+			Files.deleteIfExists(tmp(file(0)).toPath());
+			for (int i = 1; shards != null && i <= shards.written.size(); i++) {
+				Files.deleteIfExists(tmp(file(i)).toPath());
+			}
+		}
+	}
+	
+	/**
+	 * Count statements and measure the time spent writing them.
+	 */
+	private static class TimedHandler extends RDFHandlerWrapper {
+		private long statements = 0;
+		private long nanos = 0;
+		
+		@Override
+		public void handleStatement(Statement st) {
+			long start = System.nanoTime();
+			super.handleStatement(st);
+			nanos += System.nanoTime() - start;
+			statements++;
+		}
+		
+		@Override
+		public void endRDF() {
+			long start = System.nanoTime();
+			super.endRDF();
+			nanos += System.nanoTime() - start;
+			
+			Metrics.counter("write.statements").inc(statements);
+			Metrics.timer("write.latency").record(nanos / 1e9);
+			LOG.info("Written {} statements in {} ms", statements, nanos / 1_000_000);
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param h RDF handler
+		 */
+		private TimedHandler(RDFHandler h) {
+			super(h);
+		}
+	}
+	
+	/**
+	 * Split statements into shards and write each shard on a separate thread.
+	 * The number of shards waiting to be written is bounded.
+	 */
+	private class ShardHandler extends AbstractRDFHandler {
+		private final ExecutorService pool;
+		private final Semaphore pending;
+		private final List<Future<?>> written = new ArrayList<>();
+		
+		private List<Statement> batch = new ArrayList<>();
+		private long size = 0;
+		
+		/**
+		 * Estimate the serialized size of a statement
+		 * 
+		 * @param st statement
+		 * @return size in bytes 
+		 */
+		private long size(Statement st) {
+			long len = st.getSubject().stringValue().length() 
+						+ st.getPredicate().stringValue().length()
+						+ st.getObject().stringValue().length() + 10;
+			if (st.getObject() instanceof Literal) {
+				Literal l = (Literal) st.getObject();
+				len += l.getLanguage().isPresent() ? 3 
+										: l.getDatatype().stringValue().length();
+			}
+			return len;
+		}
+		
+		/**
+		 * Submit current batch to be written as the next shard
+		 */
+		private void flush() {
+			if (batch.isEmpty()) {
+				return;
+			}
+			final List<Statement> todo = batch;
+			final File f = file(written.size() + 1);
+			
+			try {
+				pending.acquire();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RDFHandlerException("Interrupted", ex);
+			}
+			written.add(pool.submit(() -> {
+				try (OutputStream os = open(tmp(f), comp)) {
+					LOG.debug("Writing shard {}", f);
+					Rio.write(todo, os, fmt);
+				} finally {
+					pending.release();
+				}
+				return null;
+			}));
+			batch = new ArrayList<>();
+			size = 0;
+		}
+		
+		@Override
+		public void handleStatement(Statement st) {
+			batch.add(st);
+			size += size(st);
+			if (size >= split) {
+				flush();
+			}
+		}
+		
+		@Override
+		public void endRDF() {
+			flush();
+			for (Future<?> f: written) {
+				try {
+					f.get();
+				} catch (ExecutionException ex) {
+					throw new RDFHandlerException("Could not write shard", ex.getCause());
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new RDFHandlerException("Interrupted", ex);
+				}
+			}
+			LOG.info("Written {} shards", written.size());
+		}
+		
+		/**
+		 * Constructor
+		 */
+		private ShardHandler() {
+			this.pool = Executors.newFixedThreadPool(writers, r -> {
+				Thread t = new Thread(r, "writer");
+				t.setDaemon(true);
+				return t;
+			});
+			this.pending = new Semaphore(writers * 2);
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param dir output directory
+	 * @param name base name of the output file(s)
+	 * @param fmt RDF format
+	 * @param comp compression
+	 * @param split maximum size of a shard in bytes, or 0 for a single file
+	 * @param writers number of threads writing shards
+	 */
+	public OutputStage(File dir, String name, RDFFormat fmt, Compression comp, 
+													long split, int writers) {
+		this.dir = dir;
+		this.name = name;
+		this.fmt = fmt;
+		this.comp = comp;
+		this.split = split;
+		this.writers = writers;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Staged conversion of procedures, with separate thread pools for parsing 
+ * and mapping, an optional asynchronous side stage (e.g. ELI matching),
+ * and the calling thread as the single writer.
+ * 
+ * The number of procedures in flight between reading and writing is bounded:
+ * a procedure is only submitted when the writer is less than a given number 
+ * of procedures behind, so a slow writer or side stage slows down parsing 
+ * instead of filling the memory.
+ * Results are written in the order of the list, so the output is the same 
+ * as processing the procedures one by one.
+ * 
+ * On the first error, pending work is cancelled, the pools are shut down and 
+ * the error is thrown by {@link #run}.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ * @param <P> parsed procedure
+ * @param <M> mapped procedure
+ */
+public class Pipeline<P,M> {
+	private final static Logger LOG = LoggerFactory.getLogger(Pipeline.class);
+	
+	private final int parsers;
+	private final int mappers;
+	private final int capacity;
+	
+	/**
+	 * Stage that may throw an I/O exception
+	 * 
+	 * @param <I> input
+	 * @param <O> output
+	 */
+	@FunctionalInterface
+	public interface Stage<I,O> {
+		/**
+		 * Process input
+		 * 
+		 * @param in input
+		 * @return output
+		 * @throws IOException 
+		 */
+		O apply(I in) throws IOException;
+	}
+	
+	/**
+	 * Single writer, called on the thread running the pipeline
+	 * 
+	 * @param <M> mapped procedure
+	 */
+	@FunctionalInterface
+	public interface Sink<M> {
+		/**
+		 * Write a mapped procedure
+		 * 
+		 * @param name file name of the procedure
+		 * @param m mapped procedure
+		 * @throws IOException 
+		 */
+		void write(String name, M m) throws IOException;
+	}
+	
+	/**
+	 * Create a thread pool with daemon threads
+	 * 
+	 * @param threads number of threads
+	 * @param name thread name
+	 * @return executor service
+	 */
+	private static ExecutorService pool(int threads, String name) {
+		return Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, name);
+			t.setDaemon(true);
+			return t;
+		});
+	}
+	
+	/**
+	 * Wrap a stage into a function, for use with completable futures
+	 * 
+	 * @param <I> input
+	 * @param <O> output
+	 * @param stage stage
+	 * @return function
+	 */
+	private static <I,O> Function<I,O> unchecked(Stage<I,O> stage) {
+		return in -> {
+			try {
+				return stage.apply(in);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		};
+	}
+	
+	/**
+	 * Run the pipeline
+	 * 
+	 * @param names file names of the procedures
+	 * @param parse parse stage
+	 * @param map mapping stage
+	 * @param side asynchronous side stage, or null
+	 * @param sink writer
+	 * @throws IOException 
+	 */
+	public void run(List<String> names, Stage<String,P> parse, Stage<P,M> map, 
+				Function<M,CompletableFuture<M>> side, Sink<M> sink) throws IOException {
+		ExecutorService parsePool = pool(parsers, "parse");
+		ExecutorService mapPool = pool(mappers, "map");
+		Function<String,P> p = unchecked(parse);
+		Function<P,M> m = unchecked(map);
+		
+		List<CompletableFuture<M>> results = new ArrayList<>(names.size());
+		int submitted = 0;
+		try {
+			for (int i = 0; i < names.size(); i++) {
+				for (; submitted < names.size() && submitted < i + capacity; submitted++) {
+					String name = names.get(submitted);
+					CompletableFuture<M> f = CompletableFuture
+									.supplyAsync(() -> p.apply(name), parsePool)
+									.thenApplyAsync(m, mapPool);
+					results.add((side != null) ? f.thenCompose(side) : f);
+				}
+				long start = System.nanoTime();
+				M result = results.get(i).get();
+				Metrics.timer("pipeline.wait").since(start);
+				// allow garbage collection
+				results.set(i, null);
+				sink.write(names.get(i), result);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			throw new IOException("Conversion failed", 
+				(cause instanceof UncheckedIOException) ? cause.getCause() : cause);
+		} finally {
+			if (submitted < names.size() || results.stream().anyMatch(f -> f != null && !f.isDone())) {
+				LOG.warn("Stopping pipeline, {} of {} procedures submitted", submitted, names.size());
+				results.stream().filter(f -> f != null).forEach(f -> f.cancel(true));
+			}
+			parsePool.shutdownNow();
+			mapPool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param parsers number of parser threads
+	 * @param mappers number of mapping threads
+	 * @param capacity maximum number of procedures in flight
+	 */
+	public Pipeline(int parsers, int mappers, int capacity) {
+		this.parsers = Math.max(1, parsers);
+		this.mappers = Math.max(1, mappers);
+		this.capacity = Math.max(1, capacity);
+	}
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import be.fedict.lodtools.cpsv.input.DirectorySource;
+import be.fedict.lodtools.cpsv.input.ProcedureSource;
+import be.fedict.lodtools.cpsv.stax.ProcedureRecord;
+import be.fedict.lodtools.cpsv.stax.RecordCodec;
+import be.fedict.lodtools.cpsv.stax.StaxProcedureReader;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parse-once cache of procedure records, stored as one binary file in a directory.
+ * Each save writes a new generation of the file ({@code procedures-<n>.bin}),
+ * so the file that is still memory-mapped is never replaced.
+ * 
+ * The file contains a header, a table of length-prefixed UTF-8 strings shared 
+ * by all records, an index of records (language and file name, SHA-1 hash, 
+ * size and modification time of the XML file, offset and length) and the 
+ * records encoded by {@link RecordCodec}.
+ * Records are always parsed by the {@link StaxProcedureReader}.
+ * 
+ * The file is memory-mapped when the cache is opened. For files in a directory,
+ * a record is decoded without reading the XML file when its size and 
+ * modification time did not change. Otherwise the XML file is read, and only 
+ * parsed again when its hash changed.
+ * The file is rewritten when the cache is closed and records were added,
+ * updated or removed.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class ProcedureCache implements AutoCloseable {
+	private final static Logger LOG = LoggerFactory.getLogger(ProcedureCache.class);
+	
+	private final static Pattern FILE = Pattern.compile("procedures-(\\d+)\\.bin");
+	private final static byte[] MAGIC = "CPSVREC2".getBytes(StandardCharsets.US_ASCII);
+	
+	private final File dir;
+	private File file = null;
+	private long generation = 0;
+	private FileChannel channel = null;
+	private ByteBuffer data = null;
+	private String[] strings = new String[0];
+	
+	private final Map<String,Entry> entries = new ConcurrentHashMap<>();
+	private final Map<String,Integer> ids = new HashMap<>();
+	private final List<String> added = new ArrayList<>();
+	private volatile boolean changed = false;
+	
+	/**
+	 * Cache entry, either stored in the mapped file or added during this run
+	 */
+	private static class Entry {
+		private final byte[] hash;
+		private final long size;
+		private final long modified;
+		private final int offset;
+		private final int length;
+		private final byte[] record;
+		
+		/**
+		 * Check if the size and modification time of the file are unchanged
+		 * 
+		 * @param f file or null
+		 * @return true if unchanged
+		 */
+		private boolean sameFile(File f) {
+			return f != null && size == f.length() && modified == f.lastModified();
+		}
+		
+		private Entry(byte[] hash, long size, long modified, int offset, int length, 
+																byte[] record) {
+			this.hash = hash;
+			this.size = size;
+			this.modified = modified;
+			this.offset = offset;
+			this.length = length;
+			this.record = record;
+		}
+	}
+	
+	/**
+	 * Read a length-prefixed UTF-8 string
+	 * 
+	 * @param buf buffer
+	 * @return string
+	 */
+	private static String readString(ByteBuffer buf) {
+		byte[] b = new byte[buf.getInt()];
+		buf.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Write a length-prefixed UTF-8 string
+	 * 
+	 * @param out output stream
+	 * @param s string
+	 * @throws IOException 
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+	
+	/**
+	 * Get the index of a string in the string table, adding it if needed
+	 * 
+	 * @param s string
+	 * @return index
+	 */
+	private synchronized int intern(String s) {
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = strings.length + added.size();
+			ids.put(s, id);
+			added.add(s);
+		}
+		return id;
+	}
+	
+	/**
+	 * Get all strings, including the ones added during this run
+	 * 
+	 * @return string table
+	 */
+	private synchronized String[] table() {
+		String[] t = Arrays.copyOf(strings, strings.length + added.size());
+		for (int i = 0; i < added.size(); i++) {
+			t[strings.length + i] = added.get(i);
+		}
+		return t;
+	}
+	
+	/**
+	 * Decode a record
+	 * 
+	 * @param e cache entry
+	 * @param table string table
+	 * @return record
+	 */
+	private ProcedureRecord decode(Entry e, String[] table) {
+		if (e.record != null) {
+			return RecordCodec.decode(ByteBuffer.wrap(e.record), table);
+		}
+		ByteBuffer buf = data.duplicate();
+		buf.position(e.offset).limit(e.offset + e.length);
+		return RecordCodec.decode(buf, table);
+	}
+	
+	/**
+	 * Read a language variant of a procedure, from the cache if the XML file
+	 * did not change, otherwise by parsing the XML file.
+	 * 
+	 * @param src procedure source
+	 * @param lang language
+	 * @param name file name of the procedure
+	 * @return procedure
+	 * @throws IOException 
+	 */
+	public ProcedureRecord read(ProcedureSource src, String lang, String name) throws IOException {
+		String key = lang + "/" + name;
+		Entry e = entries.get(key);
+		
+		File f = (src instanceof DirectorySource) 
+					? ((DirectorySource) src).file(lang, name) : null;
+		if (e != null && e.record == null && e.sameFile(f)) {
+			Metrics.counter("cache.hits").inc();
+			return decode(e, strings);
+		}
+		// get size and time before reading, so a later change is detected
+		long size = (f != null) ? f.length() : -1;
+		long modified = (f != null) ? f.lastModified() : -1;
+		
+		byte[] xml;
+		try (InputStream in = src.open(lang, name)) {
+			xml = ByteStreams.toByteArray(in);
+		}
+		byte[] hash = DigestUtils.sha1(xml);
+		
+		if (e != null && e.record == null && Arrays.equals(e.hash, hash)) {
+			Metrics.counter("cache.hits").inc();
+			if (f != null) {
+				// touched but not changed
+				entries.put(key, new Entry(hash, size, modified, e.offset, e.length, null));
+				changed = true;
+			}
+			return decode(e, strings);
+		}
+		Metrics.counter("cache.misses").inc();
+		
+		long start = System.nanoTime();
+		ProcedureRecord p = StaxProcedureReader.read(new ByteArrayInputStream(xml), true);
+		Metrics.counter("parse.files").inc();
+		Metrics.timer("parse.latency").since(start);
+		
+		byte[] record = RecordCodec.encode(p, this::intern);
+		entries.put(key, new Entry(hash, size, modified, 0, record.length, record));
+		changed = true;
+		return p;
+	}
+	
+	/**
+	 * Remove the records of procedures that are no longer in the input
+	 * 
+	 * @param names file names of all procedures in the input
+	 */
+	public void retain(Collection<String> names) {
+		Set<String> keep = new HashSet<>(names);
+		if (entries.keySet().removeIf(k -> !keep.contains(k.substring(k.indexOf('/') + 1)))) {
+			changed = true;
+		}
+	}
+	
+	/**
+	 * Get the cache file of a generation
+	 * 
+	 * @param gen generation
+	 * @return file
+	 */
+	private File file(long gen) {
+		return new File(dir, "procedures-" + gen + ".bin");
+	}
+	
+	/**
+	 * Get the generation of a cache file
+	 * 
+	 * @param f file
+	 * @return generation or -1 if not a cache file
+	 */
+	private static long generation(File f) {
+		Matcher m = FILE.matcher(f.getName());
+		return m.matches() ? Long.parseLong(m.group(1)) : -1;
+	}
+	
+	/**
+	 * Remove the cache files of older generations.
+	 * This may fail on some platforms while the file is still mapped, 
+	 * it will then be removed on a next run.
+	 */
+	private void removeOld() {
+		File[] files = dir.listFiles();
+		for (File f: (files != null) ? files : new File[0]) {
+			long gen = generation(f);
+			if (gen >= 0 && gen < generation) {
+				try {
+					Files.deleteIfExists(f.toPath());
+				} catch (IOException ex) {
+					LOG.debug("Could not remove old cache {}", f);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Open the most recent cache file of a previous run, if any
+	 * 
+	 * @throws IOException 
+	 */
+	private void open() throws IOException {
+		File[] files = dir.listFiles();
+		for (File f: (files != null) ? files : new File[0]) {
+			generation = Math.max(generation, generation(f));
+		}
+		removeOld();
+		file = file(generation);
+		if (!file.exists()) {
+			return;
+		}
+		if (file.length() > Integer.MAX_VALUE) {
+			LOG.warn("Cache {} too large, ignored", file);
+			return;
+		}
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		
+		byte[] magic = new byte[MAGIC.length];
+		try {
+			buf.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				LOG.warn("Cache {} has unknown format, ignored", file);
+				return;
+			}
+			String[] table = new String[buf.getInt()];
+			for (int i = 0; i < table.length; i++) {
+				table[i] = readString(buf);
+			}
+			int count = buf.getInt();
+			Map<String,Entry> index = new HashMap<>(count * 2);
+			for (int i = 0; i < count; i++) {
+				String key = readString(buf);
+				byte[] hash = new byte[20];
+				buf.get(hash);
+				long size = buf.getLong();
+				long modified = buf.getLong();
+				index.put(key, new Entry(hash, size, modified, buf.getInt(), buf.getInt(), null));
+			}
+			data = buf.slice();
+			strings = table;
+			for (int i = 0; i < table.length; i++) {
+				ids.put(table[i], i);
+			}
+			entries.putAll(index);
+		} catch (BufferUnderflowException ex) {
+			LOG.warn("Cache {} truncated, ignored", file);
+			return;
+		}
+		LOG.info("Cache {} contains {} records", file, entries.size());
+	}
+	
+	/**
+	 * Write all records to a new cache file, with a string table containing
+	 * only the strings that are still used.
+	 * 
+	 * @throws IOException 
+	 */
+	private void save() throws IOException {
+		String[] table = table();
+		Map<String,Integer> used = new HashMap<>();
+		List<String> strs = new ArrayList<>();
+		Map<String,byte[]> records = new TreeMap<>();
+		
+		for (Map.Entry<String,Entry> e: entries.entrySet()) {
+			ProcedureRecord p = decode(e.getValue(), table);
+			records.put(e.getKey(), RecordCodec.encode(p, s -> used.computeIfAbsent(s, k -> {
+				strs.add(k);
+				return strs.size() - 1;
+			})));
+		}
+		
+		File next = file(generation + 1);
+		File tmp = new File(next.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), 64 * 1024))) {
+			out.write(MAGIC);
+			out.writeInt(strs.size());
+			for (String s: strs) {
+				writeString(out, s);
+			}
+			out.writeInt(records.size());
+			int offset = 0;
+			for (Map.Entry<String,byte[]> r: records.entrySet()) {
+				Entry e = entries.get(r.getKey());
+				writeString(out, r.getKey());
+				out.write(e.hash);
+				out.writeLong(e.size);
+				out.writeLong(e.modified);
+				out.writeInt(offset);
+				out.writeInt(r.getValue().length);
+				offset += r.getValue().length;
+			}
+			for (byte[] r: records.values()) {
+				out.write(r);
+			}
+		}
+		Files.move(tmp.toPath(), next.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		generation++;
+		LOG.info("Cache {} saved, {} records, {} strings", next, records.size(), strs.size());
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			if (changed) {
+				save();
+			}
+		} finally {
+			if (channel != null) {
+				channel.close();
+			}
+			data = null;
+			removeOld();
+		}
+	}
+	
+	/**
+	 * Constructor, maps the cache file of a previous run, if any.
+	 * 
+	 * @param dir cache directory, will be created if it doesn't exist
+	 * @throws IOException 
+	 */
+	public ProcedureCache(File dir) throws IOException {
+		Files.createDirectories(dir.toPath());
+		this.dir = dir;
+		open();
+	}
+}
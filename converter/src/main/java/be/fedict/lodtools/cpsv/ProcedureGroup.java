@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import be.fedict.lodtools.cpsv.proj.ProcedureProjection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * All language variants of a procedure, read as one unit.
+ * 
+ * Language-independent parts (municipalities, activities...) 
+ * only have to be read and converted for the first variant, other variants
+ * only add their language-tagged literals, lifecycle and administration.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class ProcedureGroup {
+	private final String name;
+	private final List<Variant> variants = new ArrayList<>(4);
+	
+	/**
+	 * One language variant of the procedure
+	 */
+	public static class Variant {
+		private final String lang;
+		private final ProcedureProjection proc;
+		private final boolean shared;
+		
+		/**
+		 * Get the language code of the input directory
+		 * 
+		 * @return language code 
+		 */
+		public String getLang() {
+			return lang;
+		}
+		
+		/**
+		 * Get the procedure
+		 * 
+		 * @return procedure 
+		 */
+		public ProcedureProjection getProcedure() {
+			return proc;
+		}
+		
+		/**
+		 * Check if the language-independent parts must be taken from this variant
+		 * 
+		 * @return true if shared parts are to be used
+		 */
+		public boolean isShared() {
+			return shared;
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param lang language code
+		 * @param proc procedure
+		 * @param shared use language-independent parts
+		 */
+		private Variant(String lang, ProcedureProjection proc, boolean shared) {
+			this.lang = lang;
+			this.proc = proc;
+			this.shared = shared;
+		}
+	}
+	
+	/**
+	 * Get file name of the procedure
+	 * 
+	 * @return file name 
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Get the ID of the procedure, taken from the first variant
+	 * 
+	 * @return ID or null if there are no variants
+	 */
+	public String getID() {
+		return variants.isEmpty() ? null : variants.get(0).proc.getID();
+	}
+	
+	/**
+	 * Check if a variant of the same procedure can reuse the language-independent
+	 * parts of the first variant.
+	 * 
+	 * @param id ID of the procedure
+	 * @return true if the parts are already known
+	 */
+	public boolean hasShared(String id) {
+		return !variants.isEmpty() && id != null && id.equals(getID());
+	}
+	
+	/**
+	 * Add a language variant
+	 * 
+	 * @param lang language code
+	 * @param p procedure
+	 * @param shared take language-independent parts from this variant
+	 */
+	public void add(String lang, ProcedureProjection p, boolean shared) {
+		variants.add(new Variant(lang, p, shared));
+	}
+	
+	/**
+	 * Get all language variants, in the order they were added
+	 * 
+	 * @return list of variants
+	 */
+	public List<Variant> getVariants() {
+		return Collections.unmodifiableList(variants);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param name file name of the procedure
+	 */
+	public ProcedureGroup(String name) {
+		this.name = name;
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import be.fedict.lodtools.cpsv.vocab.ATU;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.IRI;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Map a set of municipalities (NIS codes) to the minimal set of 
+ * administrative regions covering them.
+ * 
+ * Each NIS code gets a position in a bitset, the region is derived from 
+ * the NIS code. Results are cached per set, since the same sets are used
+ * by many procedures.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class RegionIndex {
+	private final static Logger LOG = LoggerFactory.getLogger(RegionIndex.class);
+	
+	private final static int BXL = 0;
+	private final static int VLA = 1;
+	private final static int WAL_EX_GER = 2;
+	private final static int GER = 3;
+	
+	private final static Set<String> NIS_GER = new HashSet<>(Arrays.asList(
+		"63001", "63012", "63013", "63023", "63040", "63048", "63061", "63067", "63087"));
+	
+	private final Map<String,Integer> positions = new HashMap<>(1024);
+	private final BitSet[] masks = new BitSet[]{ 
+		new BitSet(), new BitSet(), new BitSet(), new BitSet() };
+	
+	private final Cache<BitSet,List<IRI>> cache = 
+						CacheBuilder.newBuilder().maximumSize(4096).build();
+	
+	/**
+	 * Get the region of a municipality, based on the first digits of the NIS code.
+	 * 
+	 * @param nis NIS code
+	 * @return region or -1 if unknown
+	 */
+	private static int region(String nis) {
+		if (nis.length() != 5) {
+			return -1;
+		}
+		if (NIS_GER.contains(nis)) {
+			return GER;
+		}
+		switch (nis.substring(0, 2)) {
+			case "21":
+				return BXL;
+			case "23": case "24":
+				return VLA;
+			case "25":
+				return WAL_EX_GER;
+		}
+		switch (nis.charAt(0)) {
+			case '1': case '3': case '4': case '7':
+				return VLA;
+			case '5': case '6': case '8': case '9':
+				return WAL_EX_GER;
+			default:
+				return -1;
+		}
+	}
+	
+	/**
+	 * Get the position of a municipality in the bitset, adding it if needed
+	 * 
+	 * @param nis NIS code
+	 * @return position or -1 if the NIS code is not valid
+	 */
+	private synchronized int position(String nis) {
+		Integer pos = positions.get(nis);
+		if (pos == null) {
+			int region = region(nis);
+			if (region < 0) {
+				return -1;
+			}
+			pos = positions.size();
+			positions.put(nis, pos);
+			masks[region].set(pos);
+		}
+		return pos;
+	}
+	
+	/**
+	 * Calculate the regions covering the set of municipalities
+	 * 
+	 * @param set bitset
+	 * @return list of regions
+	 */
+	private List<IRI> cover(BitSet set) {
+		int[] cnt = new int[masks.length];
+		synchronized (this) {
+			for (int i = 0; i < cnt.length; i++) {
+				BitSet b = (BitSet) set.clone();
+				b.and(masks[i]);
+				cnt[i] = b.cardinality();
+			}
+		}
+		List<IRI> regions = new ArrayList<>(3);
+		if (cnt[BXL] > 0) {
+			regions.add(ATU.ID_BXL);
+		}
+		if (cnt[VLA] > 0) {
+			regions.add(ATU.ID_VLA);
+		}
+		if (cnt[WAL_EX_GER] > 0 && cnt[GER] > 0) {
+			regions.add(ATU.ID_WAL);
+		} else if (cnt[WAL_EX_GER] > 0) {
+			regions.add(ATU.ID_WAL_EX_GER);
+		} else if (cnt[GER] > 0) {
+			regions.add(ATU.ID_GER);
+		}
+		return Collections.unmodifiableList(regions);
+	}
+	
+	/**
+	 * Guess the regions by only counting the municipalities.
+	 * Used when the NIS codes are not available.
+	 * 
+	 * @param size number of municipalities
+	 * @return list of regions
+	 */
+	private static List<IRI> byCount(int size) {
+		List<IRI> regions = new ArrayList<>();
+		switch (size) {
+			case 9:
+				regions.add(ATU.ID_GER);
+				break;
+			case 19:
+				regions.add(ATU.ID_BXL);
+				break;
+			case 253:
+				regions.add(ATU.ID_WAL_EX_GER);
+				break;
+			case 262:
+				regions.add(ATU.ID_WAL);
+				break;
+			case 281:
+				regions.add(ATU.ID_BXL);
+				regions.add(ATU.ID_WAL);
+				break;
+			case 308: 
+				regions.add(ATU.ID_VLA);
+				break;
+			case 327:
+				regions.add(ATU.ID_BXL);
+				regions.add(ATU.ID_VLA);
+				break;
+			case 589: 
+				regions.add(ATU.ID_BXL);
+				regions.add(ATU.ID_VLA);
+				regions.add(ATU.ID_WAL);
+				break;
+			default:
+				LOG.error("Not found for {}", size);
+		}
+		return regions;
+	}
+	
+	/**
+	 * Get the minimal list of regions covering a list of municipalities.
+	 * 
+	 * @param codes NIS codes of the municipalities
+	 * @return list of regions
+	 */
+	public List<IRI> regions(List<String> codes) {
+		BitSet set = new BitSet(positions.size());
+		for (String nis: codes) {
+			int pos = (nis != null) ? position(nis.trim()) : -1;
+			if (pos < 0) {
+				// can't use the index
+				LOG.warn("Invalid NIS code {}", nis);
+				return byCount(codes.size());
+			}
+			set.set(pos);
+		}
+		if (set.isEmpty()) {
+			return byCount(codes.size());
+		}
+		List<IRI> regions = cache.getIfPresent(set);
+		if (regions == null) {
+			regions = cover(set);
+			cache.put(set, regions);
+		}
+		return regions;
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Part of a conversion that is split over multiple processes or machines.
+ * 
+ * Each procedure is assigned to one of the shards, based on a hash of its 
+ * file name. Nodes shared between procedures (costs, addresses, organizations)
+ * can end up in multiple shards, these duplicates are removed when merging.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Shard {
+	private final static Logger LOG = LoggerFactory.getLogger(Shard.class);
+	
+	private final static HashFunction HASH = Hashing.murmur3_32();
+	private final static String PREFIX = "cpsv-shard-";
+	// output of a shard, optionally split, but not the added / removed files
+	private final static Pattern OUTPUT = 
+						Pattern.compile(PREFIX + "\\d+-of-\\d+(-\\d{4})?\\..+");
+	
+	private final int shard;
+	private final int shards;
+	
+	/**
+	 * Parse shard number and total number of shards
+	 * 
+	 * @param str shard as i/N, i starting from 1
+	 * @return shard
+	 */
+	public static Shard parse(String str) {
+		int slash = str.indexOf('/');
+		if (slash > 0) {
+			try {
+				return new Shard(Integer.parseInt(str.substring(0, slash)), 
+								Integer.parseInt(str.substring(slash + 1)));
+			} catch (NumberFormatException ex) {
+				// not a number
+			}
+		}
+		throw new IllegalArgumentException("Shard should be i/N, with i from 1 to N, not " + str);
+	}
+	
+	/**
+	 * Check if a procedure belongs to this shard.
+	 * The hash does not depend on the JVM, so all processes agree on the shards.
+	 * 
+	 * @param name file name of the procedure
+	 * @return true if part of this shard
+	 */
+	public boolean contains(String name) {
+		int h = HASH.hashString(name, StandardCharsets.UTF_8).asInt();
+		return Math.floorMod(h, shards) == shard - 1;
+	}
+	
+	/**
+	 * Get the base name of the output file of this shard
+	 * 
+	 * @return base name
+	 */
+	public String getName() {
+		return PREFIX + shard + "-of-" + shards;
+	}
+	
+	@Override
+	public String toString() {
+		return shard + "/" + shards;
+	}
+	
+	/**
+	 * Open a shard file, decompressing if needed
+	 * 
+	 * @param f file
+	 * @return input stream
+	 * @throws IOException 
+	 */
+	private static InputStream open(File f) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(f), 64 * 1024);
+		if (f.getName().endsWith(".gz")) {
+			return new GZIPInputStream(in, 64 * 1024);
+		}
+		if (f.getName().endsWith(".zst")) {
+			return new BufferedInputStream(new ZstdInputStream(in), 64 * 1024);
+		}
+		return in;
+	}
+	
+	/**
+	 * Get the RDF format of a shard file
+	 * 
+	 * @param f file
+	 * @return format
+	 * @throws IOException if format is not supported
+	 */
+	private static RDFFormat format(File f) throws IOException {
+		String name = f.getName().replaceFirst("\\.(gz|zst)$", "");
+		return Rio.getParserFormatForFileName(name)
+				.orElseThrow(() -> new IOException("Unknown format of " + f));
+	}
+	
+	/**
+	 * Get the list of shard files.
+	 * For directories, all output files written by the shards are used.
+	 * 
+	 * @param names files or directories
+	 * @return sorted list of files
+	 */
+	public static List<File> files(List<String> names) {
+		List<File> files = new ArrayList<>();
+		for (String name: names) {
+			File f = new File(name);
+			File[] lst = f.listFiles((dir, n) -> OUTPUT.matcher(n).matches());
+			if (lst != null) {
+				Arrays.sort(lst);
+				files.addAll(Arrays.asList(lst));
+			} else {
+				files.add(f);
+			}
+		}
+		return files;
+	}
+	
+	/**
+	 * Merge the output of the shards, removing duplicate statements
+	 * about shared nodes.
+	 * 
+	 * @param files shard files
+	 * @param h RDF handler to write the merged statements to
+	 * @throws IOException 
+	 */
+	public static void merge(List<File> files, RDFHandler h) throws IOException {
+		SharedNodeFilter filter = new SharedNodeFilter(h);
+		// only start and end the output once
+		RDFHandler part = new RDFHandlerWrapper(filter) {
+			@Override
+			public void startRDF() {
+			}
+			@Override
+			public void endRDF() {
+			}
+		};
+		
+		filter.startRDF();
+		for (File f: files) {
+			LOG.info("Merging {}", f);
+			RDFParser p = Rio.createParser(format(f));
+			p.setRDFHandler(part);
+			try (InputStream in = open(f)) {
+				p.parse(in, Consts.PUBSERV_BELGIF);
+			}
+		}
+		filter.endRDF();
+		LOG.info("Merged {} files, dropped {} duplicate statements", 
+												files.size(), filter.getDropped());
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param shard shard number, starting from 1
+	 * @param shards total number of shards
+	 */
+	public Shard(int shard, int shards) {
+		if (shards < 1 || shard < 1 || shard > shards) {
+			throw new IllegalArgumentException("Invalid shard " + shard + "/" + shards 
+											+ ", shards are numbered from 1 to " + shards);
+		}
+		this.shard = shard;
+		this.shards = shards;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+
+/**
+ * Filter out duplicate statements about nodes shared by multiple procedures
+ * (costs, addresses, organizations, lifecycle events).
+ * 
+ * Only a 64-bit fingerprint of each statement is kept in memory.
+ * Statements about other nodes are passed through unchecked.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class SharedNodeFilter extends RDFHandlerWrapper {
+	private final static HashFunction HASH = Hashing.murmur3_128();
+	
+	private final static String[] SHARED = new String[] {
+		Consts.PUBSERV_BELGIF + "cost/",
+		Consts.PUBSERV_BELGIF + "addr/",
+		Consts.PUBSERV_BELGIF + "org/",
+		Consts.ORG_BELGIF,
+		Consts.PREFIX_LIFE
+	};
+	
+	private final FingerprintSet seen = new FingerprintSet(64 * 1024);
+	private long dropped = 0;
+	
+	/**
+	 * Check if the subject is a node shared between procedures
+	 * 
+	 * @param subj subject
+	 * @return true if shared
+	 */
+	private static boolean isShared(String subj) {
+		for (String prefix: SHARED) {
+			if (subj.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Check if a statement is about a node shared between procedures
+	 * 
+	 * @param st statement
+	 * @return true if shared
+	 */
+	public static boolean isShared(Statement st) {
+		return isShared(st.getSubject().stringValue());
+	}
+	
+	/**
+	 * Calculate fingerprint of a statement
+	 * 
+	 * @param st statement
+	 * @return 64-bit fingerprint
+	 */
+	public static long fingerprint(Statement st) {
+		return HASH.newHasher()
+				.putString(st.getSubject().stringValue(), StandardCharsets.UTF_8)
+				.putByte((byte) 0)
+				.putString(st.getPredicate().stringValue(), StandardCharsets.UTF_8)
+				.putByte((byte) 0)
+				.putString(st.getObject().toString(), StandardCharsets.UTF_8)
+				.hash().asLong();
+	}
+	
+	/**
+	 * Get the number of duplicate statements that were dropped
+	 * 
+	 * @return number of statements
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+	
+	@Override
+	public void handleStatement(Statement st) throws RDFHandlerException {
+		if (isShared(st) && !seen.add(fingerprint(st))) {
+			dropped++;
+			return;
+		}
+		super.handleStatement(st);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param h handler to pass the statements to
+	 */
+	public SharedNodeFilter(RDFHandler h) {
+		super(h);
+	}
+}
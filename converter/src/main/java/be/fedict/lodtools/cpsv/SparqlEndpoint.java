@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.IOUtils;
+
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.Query;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.resultio.sparqljson.SPARQLBooleanJSONWriter;
+import org.eclipse.rdf4j.query.resultio.sparqljson.SPARQLResultsJSONWriter;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal read-only SPARQL endpoint on top of a repository, 
+ * to query the converted data locally.
+ * 
+ * Queries can be sent using GET or POST to /sparql, as described in the 
+ * SPARQL protocol. Results of SELECT and ASK queries are returned as JSON, 
+ * results of CONSTRUCT and DESCRIBE queries as N-Triples.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class SparqlEndpoint implements AutoCloseable {
+	private final static Logger LOG = LoggerFactory.getLogger(SparqlEndpoint.class);
+	
+	private final static String FORM = "application/x-www-form-urlencoded";
+	private final static String SPARQL = "application/sparql-query";
+	
+	private final HttpServer server;
+	private final Repository repo;
+	
+	/**
+	 * Get the value of the query parameter from a URL-encoded string
+	 * 
+	 * @param params URL-encoded parameters
+	 * @return query or null
+	 * @throws IOException 
+	 */
+	private static String param(String params) throws IOException {
+		if (params == null) {
+			return null;
+		}
+		for (String p: params.split("&")) {
+			if (p.startsWith("query=")) {
+				return URLDecoder.decode(p.substring(6), StandardCharsets.UTF_8.name());
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Send a response
+	 * 
+	 * @param ex HTTP exchange
+	 * @param code HTTP status code
+	 * @param type content type
+	 * @param body response body
+	 * @throws IOException 
+	 */
+	private static void send(HttpExchange ex, int code, String type, byte[] body) 
+															throws IOException {
+		ex.getResponseHeaders().set("Content-Type", type);
+		ex.sendResponseHeaders(code, body.length);
+		try (OutputStream os = ex.getResponseBody()) {
+			os.write(body);
+		}
+	}
+	
+	/**
+	 * Evaluate query and write results
+	 * 
+	 * @param query SPARQL query
+	 * @param out output stream
+	 * @return content type of the results
+	 */
+	private String evaluate(String query, OutputStream out) {
+		try (RepositoryConnection conn = repo.getConnection()) {
+			Query q = conn.prepareQuery(query);
+			if (q instanceof TupleQuery) {
+				((TupleQuery) q).evaluate(new SPARQLResultsJSONWriter(out));
+				return "application/sparql-results+json";
+			}
+			if (q instanceof BooleanQuery) {
+				new SPARQLBooleanJSONWriter(out).handleBoolean(((BooleanQuery) q).evaluate());
+				return "application/sparql-results+json";
+			}
+			Rio.write(QueryResults.asModel(((GraphQuery) q).evaluate()), out, 
+															RDFFormat.NTRIPLES);
+			return RDFFormat.NTRIPLES.getDefaultMIMEType();
+		}
+	}
+	
+	/**
+	 * Handle a request
+	 * 
+	 * @param ex HTTP exchange
+	 * @throws IOException 
+	 */
+	private void handle(HttpExchange ex) throws IOException {
+		String query;
+		
+		switch (ex.getRequestMethod()) {
+			case "GET":
+				query = param(ex.getRequestURI().getRawQuery());
+				break;
+			case "POST":
+				String type = ex.getRequestHeaders().getFirst("Content-Type");
+				try (InputStream in = ex.getRequestBody()) {
+					String body = IOUtils.toString(in, StandardCharsets.UTF_8);
+					query = (type != null && type.startsWith(SPARQL)) ? body 
+								: (type == null || type.startsWith(FORM)) ? param(body) : null;
+				}
+				break;
+			default:
+				send(ex, 405, "text/plain", "Method not allowed".getBytes(StandardCharsets.UTF_8));
+				return;
+		}
+		if (query == null) {
+			send(ex, 400, "text/plain", "Missing query".getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			String type = evaluate(query, out);
+			send(ex, 200, type, out.toByteArray());
+		} catch (RuntimeException e) {
+			LOG.warn("Query failed: {}", e.getMessage());
+			send(ex, 400, "text/plain", String.valueOf(e.getMessage())
+												.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	@Override
+	public void close() {
+		server.stop(1);
+	}
+	
+	/**
+	 * Constructor, starts listening on the loopback interface.
+	 * 
+	 * @param repo repository to query
+	 * @param port TCP port
+	 * @throws IOException 
+	 */
+	public SparqlEndpoint(Repository repo, int port) throws IOException {
+		this.repo = repo;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		server.createContext("/sparql", ex -> {
+			try {
+				handle(ex);
+			} finally {
+				ex.close();
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(4, r -> {
+			Thread t = new Thread(r, "sparql");
+			t.setDaemon(true);
+			return t;
+		}));
+		server.start();
+		LOG.info("SPARQL endpoint on http://127.0.0.1:{}/sparql", port);
+	}
+}
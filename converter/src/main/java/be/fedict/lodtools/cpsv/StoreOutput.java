@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.File;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.repository.util.RDFInserter;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.eclipse.rdf4j.sail.nativerdf.NativeStore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load the converted statements into an embedded RDF4J store, 
+ * so the data can be queried without a separate load step.
+ * 
+ * The previous content of the store is replaced in one transaction,
+ * so queries either see the old or the new data.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class StoreOutput implements AutoCloseable {
+	private final static Logger LOG = LoggerFactory.getLogger(StoreOutput.class);
+	
+	private final Repository repo;
+	private StoreHandler current = null;
+	
+	/**
+	 * Handler replacing the content of the store
+	 */
+	private static class StoreHandler extends RDFHandlerWrapper {
+		private final RepositoryConnection conn;
+		private long count = 0;
+		
+		@Override
+		public void startRDF() {
+			conn.begin();
+			conn.clear();
+			super.startRDF();
+		}
+		
+		@Override
+		public void handleStatement(Statement st) {
+			super.handleStatement(st);
+			count++;
+		}
+		
+		@Override
+		public void endRDF() {
+			super.endRDF();
+			conn.commit();
+			conn.close();
+			LOG.info("Loaded {} statements into store", count);
+		}
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param conn repository connection
+		 */
+		private StoreHandler(RepositoryConnection conn) {
+			super(new RDFInserter(conn));
+			this.conn = conn;
+		}
+	}
+	
+	/**
+	 * Get the repository, e.g. for querying
+	 * 
+	 * @return repository
+	 */
+	public Repository getRepository() {
+		return repo;
+	}
+	
+	/**
+	 * Get a handler for loading statements, replacing the current content.
+	 * Changes are committed when all statements are handled.
+	 * 
+	 * @return RDF handler
+	 */
+	public RDFHandler handler() {
+		current = new StoreHandler(repo.getConnection());
+		return current;
+	}
+	
+	/**
+	 * Roll back the changes of a load that did not finish, keeping the
+	 * previous content.
+	 */
+	public void abort() {
+		if (current != null && current.conn.isOpen()) {
+			LOG.warn("Rolling back store");
+			if (current.conn.isActive()) {
+				current.conn.rollback();
+			}
+			current.conn.close();
+		}
+		current = null;
+	}
+	
+	@Override
+	public void close() {
+		abort();
+		repo.shutDown();
+	}
+	
+	/**
+	 * Create a store from a specification: "memory" for an in-memory store,
+	 * or "native:directory" for a store on disk.
+	 * 
+	 * @param spec store specification
+	 * @param indexes indexes of the native store, e.g. "spoc,posc"
+	 * @return store
+	 */
+	public static StoreOutput create(String spec, String indexes) {
+		if (spec.equals("memory")) {
+			return new StoreOutput(null, null);
+		}
+		if (spec.startsWith("native:")) {
+			return new StoreOutput(new File(spec.substring(7)), indexes);
+		}
+		throw new IllegalArgumentException("Unsupported store " + spec);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param dir directory of the native store, or null for an in-memory store
+	 * @param indexes indexes of the native store, e.g. "spoc,posc"
+	 */
+	public StoreOutput(File dir, String indexes) {
+		if (dir == null) {
+			LOG.info("Using memory store");
+			repo = new SailRepository(new MemoryStore());
+		} else {
+			LOG.info("Using native store in {}, indexes {}", dir, indexes);
+			repo = new SailRepository(new NativeStore(dir, indexes));
+		}
+		repo.initialize();
+	}
+}
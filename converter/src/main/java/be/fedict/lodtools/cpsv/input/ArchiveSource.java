@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.input;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Procedure files in a zip or (gzipped) tar archive of the export, 
+ * without unpacking the archive to disk.
+ * 
+ * Entries are matched on their last two path components (language and file
+ * name), so the archive may contain a top-level directory.
+ * Zip entries are read when needed, tar archives can only be read 
+ * sequentially and are loaded into memory.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class ArchiveSource implements ProcedureSource {
+	private final static int BLOCK = 512;
+	
+	private final File archive;
+	private final ZipFile zip;
+	private final Map<String,Map<String,Object>> entries = new HashMap<>();
+	
+	/**
+	 * Add an entry, if it is a file in a language directory
+	 * 
+	 * @param path path of the entry in the archive
+	 * @param entry zip entry or content
+	 */
+	private void add(String path, Object entry) {
+		String[] parts = path.split("/");
+		if (parts.length < 2 || path.endsWith("/")) {
+			return;
+		}
+		String lang = parts[parts.length - 2];
+		String name = parts[parts.length - 1];
+		entries.computeIfAbsent(lang, k -> new LinkedHashMap<>()).put(name, entry);
+	}
+	
+	/**
+	 * Get a NUL-terminated string from a tar header
+	 * 
+	 * @param header header block
+	 * @param off offset
+	 * @param len maximum length
+	 * @return string
+	 */
+	private static String str(byte[] header, int off, int len) {
+		int end = off;
+		while (end < off + len && header[end] != 0) {
+			end++;
+		}
+		return new String(header, off, end - off, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Get an octal number from a tar header
+	 * 
+	 * @param header header block
+	 * @param off offset
+	 * @param len maximum length
+	 * @return number
+	 * @throws IOException 
+	 */
+	private static long octal(byte[] header, int off, int len) throws IOException {
+		if ((header[off] & 0x80) != 0) {
+			throw new IOException("Unsupported size in tar header");
+		}
+		String s = str(header, off, len).trim();
+		return s.isEmpty() ? 0 : Long.parseLong(s, 8);
+	}
+	
+	/**
+	 * Get the path from the records of a PAX extended header, if any
+	 * 
+	 * @param data content of the extended header
+	 * @return path or null
+	 */
+	private static String paxPath(byte[] data) {
+		String s = new String(data, StandardCharsets.UTF_8);
+		for (String rec: s.split("\n")) {
+			int pos = rec.indexOf(" path=");
+			if (pos > 0) {
+				return rec.substring(pos + 6);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Read a tar archive completely, supporting ustar, GNU long names and 
+	 * PAX path names.
+	 * 
+	 * @param in input stream
+	 * @throws IOException 
+	 */
+	private void readTar(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		byte[] header = new byte[BLOCK];
+		String longName = null;
+		
+		while (true) {
+			try {
+				data.readFully(header);
+			} catch (EOFException eof) {
+				return;
+			}
+			if (header[0] == 0) {
+				// end of archive
+				return;
+			}
+			String name = str(header, 0, 100);
+			if (str(header, 257, 5).equals("ustar")) {
+				String prefix = str(header, 345, 155);
+				if (!prefix.isEmpty()) {
+					name = prefix + "/" + name;
+				}
+			}
+			long size = octal(header, 124, 12);
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Entry too large " + name);
+			}
+			byte[] content = new byte[(int) size];
+			data.readFully(content);
+			long pad = (BLOCK - size % BLOCK) % BLOCK;
+			data.readFully(new byte[(int) pad]);
+			
+			switch (header[156]) {
+				case 'L':
+					longName = str(content, 0, content.length);
+					break;
+				case 'x':
+					longName = paxPath(content);
+					break;
+				case '0':
+				case 0:
+					add(longName != null ? longName : name, content);
+					longName = null;
+					break;
+				default:
+					longName = null;
+			}
+		}
+	}
+	
+	@Override
+	public List<String> list(String lang) throws IOException {
+		Map<String,Object> m = entries.get(lang);
+		if (m == null) {
+			throw new IOException("No " + lang + " directory in " + archive);
+		}
+		return new ArrayList<>(m.keySet());
+	}
+	
+	@Override
+	public boolean exists(String lang, String name) {
+		return entries.getOrDefault(lang, Collections.emptyMap()).containsKey(name);
+	}
+	
+	@Override
+	public InputStream open(String lang, String name) throws IOException {
+		Object entry = entries.getOrDefault(lang, Collections.emptyMap()).get(name);
+		if (entry == null) {
+			throw new IOException("Not found " + location(lang, name));
+		}
+		if (entry instanceof ZipEntry) {
+			return new BufferedInputStream(zip.getInputStream((ZipEntry) entry));
+		}
+		return new ByteArrayInputStream((byte[]) entry);
+	}
+	
+	@Override
+	public String location(String lang, String name) {
+		return archive.getPath() + "!" + lang + "/" + name;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (zip != null) {
+			zip.close();
+		}
+	}
+	
+	/**
+	 * Check if a file is an archive supported by this class
+	 * 
+	 * @param f file
+	 * @return true if it is a zip or tar archive
+	 */
+	public static boolean isArchive(File f) {
+		String n = f.getName().toLowerCase(Locale.ROOT);
+		return f.isFile() && (n.endsWith(".zip") || n.endsWith(".tar") 
+								|| n.endsWith(".tar.gz") || n.endsWith(".tgz"));
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param archive zip, tar, tar.gz or tgz file
+	 * @throws IOException 
+	 */
+	public ArchiveSource(File archive) throws IOException {
+		this.archive = archive;
+		String n = archive.getName().toLowerCase(Locale.ROOT);
+		
+		if (n.endsWith(".zip")) {
+			zip = new ZipFile(archive);
+			Enumeration<? extends ZipEntry> en = zip.entries();
+			while (en.hasMoreElements()) {
+				ZipEntry e = en.nextElement();
+				if (!e.isDirectory()) {
+					add(e.getName(), e);
+				}
+			}
+		} else {
+			zip = null;
+			InputStream in = new BufferedInputStream(new FileInputStream(archive));
+			if (n.endsWith(".gz") || n.endsWith(".tgz")) {
+				in = new GZIPInputStream(in, 64 * 1024);
+			}
+			try {
+				readTar(in);
+			} finally {
+				in.close();
+			}
+		}
+	}
+}
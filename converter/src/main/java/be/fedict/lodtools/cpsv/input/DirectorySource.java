@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.input;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Procedure files in a directory, with a subdirectory per language.
+ * 
+ * Files can be read using a regular stream, a memory-mapped buffer or 
+ * a direct buffer that is reused by each thread, avoiding a new buffer 
+ * (and the copying of the data) for each file.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class DirectorySource implements ProcedureSource {
+	/**
+	 * How to read the files
+	 */
+	public enum Mode { STREAM, MMAP, POOLED }
+	
+	private final static int MIN_BUFSIZE = 256 * 1024;
+	
+	private final static ThreadLocal<ByteBuffer> BUFFERS = 
+				ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(MIN_BUFSIZE));
+	
+	private final File base;
+	private final Mode mode;
+	
+	/**
+	 * Get the file of a language variant
+	 * 
+	 * @param lang language subdirectory
+	 * @param name file name of the procedure
+	 * @return file
+	 */
+	public File file(String lang, String name) {
+		return new File(new File(base, lang), name);
+	}
+	
+	/**
+	 * Get the base directory
+	 * 
+	 * @return base directory
+	 */
+	public File getBase() {
+		return base;
+	}
+	
+	@Override
+	public List<String> list(String lang) throws IOException {
+		File[] files = new File(base, lang).listFiles();
+		if (files == null) {
+			throw new IOException("Could not list " + new File(base, lang));
+		}
+		List<String> names = new ArrayList<>(files.length);
+		for (File f: files) {
+			names.add(f.getName());
+		}
+		return names;
+	}
+	
+	@Override
+	public boolean exists(String lang, String name) {
+		return file(lang, name).exists();
+	}
+	
+	/**
+	 * Read a file completely into the buffer of the current thread
+	 * 
+	 * @param ch file channel
+	 * @return buffer
+	 * @throws IOException 
+	 */
+	private static ByteBuffer readPooled(FileChannel ch) throws IOException {
+		long size = ch.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("File too large");
+		}
+		ByteBuffer buf = BUFFERS.get();
+		if (buf.capacity() < size) {
+			buf = ByteBuffer.allocateDirect(Math.max((int) size, buf.capacity() * 2));
+			BUFFERS.set(buf);
+		}
+		buf.clear();
+		buf.limit((int) size);
+		while (buf.hasRemaining()) {
+			if (ch.read(buf) < 0) {
+				break;
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+	
+	@Override
+	public InputStream open(String lang, String name) throws IOException {
+		File f = file(lang, name);
+		if (mode == Mode.STREAM) {
+			return new BufferedInputStream(new FileInputStream(f));
+		}
+		try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buf = (mode == Mode.MMAP) 
+							? ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()) 
+							: readPooled(ch);
+			return new ByteBufferInputStream(buf);
+		}
+	}
+	
+	@Override
+	public String location(String lang, String name) {
+		return file(lang, name).getPath();
+	}
+	
+	@Override
+	public void close() {
+		// nothing to close
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param base base directory
+	 * @param mode how to read the files
+	 */
+	public DirectorySource(File base, Mode mode) {
+		this.base = base;
+		this.mode = mode;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Source of EDRL procedure files, organized in one subdirectory per language.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public interface ProcedureSource extends AutoCloseable {
+	/**
+	 * Get the file names of the procedures of a language
+	 * 
+	 * @param lang language subdirectory
+	 * @return list of file names
+	 * @throws IOException 
+	 */
+	public List<String> list(String lang) throws IOException;
+	
+	/**
+	 * Check if a language variant of a procedure exists
+	 * 
+	 * @param lang language subdirectory
+	 * @param name file name of the procedure
+	 * @return true if it exists
+	 */
+	public boolean exists(String lang, String name);
+	
+	/**
+	 * Open a language variant of a procedure. 
+	 * The stream should be read completely before opening the next one,
+	 * since buffers may be reused by the same thread.
+	 * 
+	 * @param lang language subdirectory
+	 * @param name file name of the procedure
+	 * @return input stream
+	 * @throws IOException 
+	 */
+	public InputStream open(String lang, String name) throws IOException;
+	
+	/**
+	 * Get a description of the location, for logging
+	 * 
+	 * @param lang language subdirectory
+	 * @param name file name of the procedure
+	 * @return location
+	 */
+	public String location(String lang, String name);
+	
+	@Override
+	public void close() throws IOException;
+}
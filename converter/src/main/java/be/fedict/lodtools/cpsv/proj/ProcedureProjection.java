@@ -83,6 +83,9 @@ public interface ProcedureProjection {
 	@XBRead("/fedict.edrl.domain.Procedure/responsibleAdministration/municipalities/fedict.edrl.domain.Municipality")	
 	public List<MunicipalityProjection> getCities();
 	
+	@XBRead("/fedict.edrl.domain.Procedure/responsibleAdministration/municipalities/fedict.edrl.domain.Municipality/nisCode")	
+	public List<String> getCityCodes();
+	
 	@XBRead("/fedict.edrl.domain.Procedure/responsibleAdministration")	
 	public ResponsibleProjection getResponsible();
 
@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.stax;
+
+import be.fedict.lodtools.cpsv.proj.ActivityProjection;
+import be.fedict.lodtools.cpsv.proj.AddressProjection;
+import be.fedict.lodtools.cpsv.proj.AdministrationProjection;
+import be.fedict.lodtools.cpsv.proj.IndicatorProjection;
+import be.fedict.lodtools.cpsv.proj.LinkProjection;
+import be.fedict.lodtools.cpsv.proj.MunicipalityProjection;
+import be.fedict.lodtools.cpsv.proj.ProcedureProjection;
+import be.fedict.lodtools.cpsv.proj.ResponsibleProjection;
+import be.fedict.lodtools.cpsv.proj.SectorProjection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain procedure record, filled by the streaming parser.
+ * Implements the XMLBeam projection interfaces, so it can be used as a 
+ * drop-in replacement.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class ProcedureRecord implements ProcedureProjection {
+	String id;
+	String language;
+	String lifecycle;
+	String title;
+	String desc;
+	String summary;
+	String applies;
+	String appliesExcept;
+	String authPeriod;
+	String condition;
+	String formalities;
+	String frequency;
+	String price;
+	Indicator indicators;
+	Responsible responsible;
+	final List<LinkProjection> forms = new ArrayList<>();
+	final List<LinkProjection> legal = new ArrayList<>();
+	final List<LinkProjection> additional = new ArrayList<>();
+	final List<MunicipalityProjection> cities = new ArrayList<>();
+	final List<SectorProjection> sectors = new ArrayList<>();
+	final List<ActivityProjection> activities = new ArrayList<>();
+
+	/**
+	 * Link to a form or document
+	 */
+	public static class Link implements LinkProjection {
+		String url;
+		String description;
+		String utility;
+		
+		@Override
+		public String getURL() {
+			return url;
+		}
+		@Override
+		public String getDescription() {
+			return description;
+		}
+		@Override
+		public String getUtility() {
+			return utility;
+		}
+	}
+	
+	/**
+	 * Municipality
+	 */
+	public static class Municipality implements MunicipalityProjection {
+		String nisCode;
+		String zipCode;
+		String name;
+		
+		@Override
+		public String getNisCode() {
+			return nisCode;
+		}
+		@Override
+		public String getZipCode() {
+			return zipCode;
+		}
+		@Override
+		public String getName() {
+			return name;
+		}
+	}
+	
+	/**
+	 * Sector
+	 */
+	public static class Sector implements SectorProjection {
+		String code;
+		String name;
+		String language;
+		String display;
+		
+		@Override
+		public String getCode() {
+			return code;
+		}
+		@Override
+		public String getName() {
+			return name;
+		}
+		@Override
+		public String getLanguage() {
+			return language;
+		}
+		@Override
+		public String getDisplay() {
+			return display;
+		}
+	}
+	
+	/**
+	 * Activity
+	 */
+	public static class Activity implements ActivityProjection {
+		String code;
+		String sector;
+		String name;
+		String language;
+		String display;
+		
+		@Override
+		public String getCode() {
+			return code;
+		}
+		@Override
+		public String getSector() {
+			return sector;
+		}
+		@Override
+		public String getName() {
+			return name;
+		}
+		@Override
+		public String getLanguage() {
+			return language;
+		}
+		@Override
+		public String getDisplay() {
+			return display;
+		}
+	}
+	
+	/**
+	 * Administration
+	 */
+	public static class Administration implements AdministrationProjection {
+		String code;
+		String name;
+		String bce;
+		String level;
+		String type;
+		
+		@Override
+		public String getCode() {
+			return code;
+		}
+		@Override
+		public String getName() {
+			return name;
+		}
+		@Override
+		public String getBCE() {
+			return bce;
+		}
+		@Override
+		public String getLevel() {
+			return level;
+		}
+		@Override
+		public String getType() {
+			return type;
+		}
+	}
+	
+	/**
+	 * Address
+	 */
+	public static class Address implements AddressProjection {
+		String mainCode;
+		String subCode;
+		String nisCode;
+		String zipCode;
+		String city;
+		String building;
+		String street;
+		String number;
+		String box;
+		String phone;
+		String email;
+		String website;
+		String contactPhone;
+		String contactSite;
+		
+		@Override
+		public String getMainCode() {
+			return mainCode;
+		}
+		@Override
+		public String getSubCode() {
+			return subCode;
+		}
+		@Override
+		public String getNisCode() {
+			return nisCode;
+		}
+		@Override
+		public String getZipCode() {
+			return zipCode;
+		}
+		@Override
+		public String getCity() {
+			return city;
+		}
+		@Override
+		public String getBuilding() {
+			return building;
+		}
+		@Override
+		public String getStreet() {
+			return street;
+		}
+		@Override
+		public String getNumber() {
+			return number;
+		}
+		@Override
+		public String getBox() {
+			return box;
+		}
+		@Override
+		public String getPhone() {
+			return phone;
+		}
+		@Override
+		public String getEmail() {
+			return email;
+		}
+		@Override
+		public String getWebsite() {
+			return website;
+		}
+		@Override
+		public String getContactPhone() {
+			return contactPhone;
+		}
+		@Override
+		public String getContactSite() {
+			return contactSite;
+		}
+	}
+	
+	/**
+	 * Responsible administration
+	 */
+	public static class Responsible implements ResponsibleProjection {
+		Administration administration;
+		Address address;
+		
+		@Override
+		public AdministrationProjection getAdministration() {
+			return administration;
+		}
+		@Override
+		public AddressProjection getAddress() {
+			return address;
+		}
+	}
+	
+	/**
+	 * Indicators (not used)
+	 */
+	public static class Indicator implements IndicatorProjection {
+	}
+	
+	@Override
+	public String getID() {
+		return id;
+	}
+
+	@Override
+	public String getLanguage() {
+		return language;
+	}
+
+	@Override
+	public String getLifecycle() {
+		return lifecycle;
+	}
+
+	@Override
+	public String getTitle() {
+		return title;
+	}
+
+	@Override
+	public String getDesc() {
+		return desc;
+	}
+
+	@Override
+	public String getSummary() {
+		return summary;
+	}
+
+	@Override
+	public String getApplies() {
+		return applies;
+	}
+
+	@Override
+	public String getAppliesExcept() {
+		return appliesExcept;
+	}
+
+	@Override
+	public String getAuthPeriod() {
+		return authPeriod;
+	}
+
+	@Override
+	public String getCondition() {
+		return condition;
+	}
+
+	@Override
+	public String getFormalities() {
+		return formalities;
+	}
+
+	@Override
+	public List<LinkProjection> getForms() {
+		return forms;
+	}
+
+	@Override
+	public List<LinkProjection> getLegal() {
+		return legal;
+	}
+
+	@Override
+	public List<LinkProjection> getAdditional() {
+		return additional;
+	}
+
+	@Override
+	public IndicatorProjection getIndicators() {
+		return indicators;
+	}
+
+	@Override
+	public List<MunicipalityProjection> getCities() {
+		return cities;
+	}
+
+	@Override
+	public List<String> getCityCodes() {
+		List<String> codes = new ArrayList<>(cities.size());
+		for (MunicipalityProjection m: cities) {
+			codes.add(m.getNisCode());
+		}
+		return codes;
+	}
+
+	@Override
+	public ResponsibleProjection getResponsible() {
+		return responsible;
+	}
+
+	@Override
+	public String getFrequency() {
+		return frequency;
+	}
+
+	@Override
+	public String getPrice() {
+		return price;
+	}
+
+	@Override
+	public List<SectorProjection> getSectors() {
+		return sectors;
+	}
+
+	@Override
+	public List<ActivityProjection> getActivities() {
+		return activities;
+	}
+}
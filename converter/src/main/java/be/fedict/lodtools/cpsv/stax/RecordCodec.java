@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.stax;
+
+import be.fedict.lodtools.cpsv.proj.ActivityProjection;
+import be.fedict.lodtools.cpsv.proj.LinkProjection;
+import be.fedict.lodtools.cpsv.proj.MunicipalityProjection;
+import be.fedict.lodtools.cpsv.proj.SectorProjection;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compact binary encoding of a procedure record.
+ * 
+ * Strings are not stored in the record itself, but as a reference to a 
+ * string table shared by all records: 0 for null, or the index in the table 
+ * plus one. References and list sizes are written as variable length integers.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class RecordCodec {
+	/**
+	 * Write a variable length integer, 7 bits per byte
+	 * 
+	 * @param out output
+	 * @param v positive value
+	 */
+	private static void writeInt(ByteArrayOutputStream out, int v) {
+		while ((v & ~0x7F) != 0) {
+			out.write((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.write(v);
+	}
+	
+	/**
+	 * Read a variable length integer
+	 * 
+	 * @param buf buffer
+	 * @return value
+	 */
+	private static int readInt(ByteBuffer buf) {
+		int v = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buf.get();
+			v |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return v;
+			}
+		}
+	}
+	
+	/**
+	 * Encoder, writing string references
+	 */
+	private static class Encoder {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		private final ToIntFunction<String> strings;
+		
+		private void str(String s) {
+			writeInt(out, (s == null) ? 0 : strings.applyAsInt(s) + 1);
+		}
+		
+		private void count(List<?> l) {
+			writeInt(out, l.size());
+		}
+		
+		private Encoder(ToIntFunction<String> strings) {
+			this.strings = strings;
+		}
+	}
+	
+	/**
+	 * Decoder, resolving string references
+	 */
+	private static class Decoder {
+		private final ByteBuffer buf;
+		private final String[] strings;
+		
+		private String str() {
+			int ref = readInt(buf);
+			return (ref == 0) ? null : strings[ref - 1];
+		}
+		
+		private int count() {
+			return readInt(buf);
+		}
+		
+		private Decoder(ByteBuffer buf, String[] strings) {
+			this.buf = buf;
+			this.strings = strings;
+		}
+	}
+	
+	/**
+	 * Encode list of links
+	 * 
+	 * @param e encoder
+	 * @param links links
+	 */
+	private static void encodeLinks(Encoder e, List<LinkProjection> links) {
+		e.count(links);
+		for (LinkProjection l: links) {
+			e.str(l.getURL());
+			e.str(l.getDescription());
+			e.str(l.getUtility());
+		}
+	}
+	
+	/**
+	 * Decode list of links
+	 * 
+	 * @param d decoder
+	 * @param links links
+	 */
+	private static void decodeLinks(Decoder d, List<LinkProjection> links) {
+		for (int i = d.count(); i > 0; i--) {
+			ProcedureRecord.Link l = new ProcedureRecord.Link();
+			l.url = d.str();
+			l.description = d.str();
+			l.utility = d.str();
+			links.add(l);
+		}
+	}
+	
+	/**
+	 * Encode a procedure record
+	 * 
+	 * @param p record
+	 * @param strings function returning the index of a string in the string table
+	 * @return encoded record
+	 */
+	public static byte[] encode(ProcedureRecord p, ToIntFunction<String> strings) {
+		Encoder e = new Encoder(strings);
+		e.str(p.id);
+		e.str(p.language);
+		e.str(p.lifecycle);
+		e.str(p.title);
+		e.str(p.desc);
+		e.str(p.summary);
+		e.str(p.applies);
+		e.str(p.appliesExcept);
+		e.str(p.authPeriod);
+		e.str(p.condition);
+		e.str(p.formalities);
+		e.str(p.frequency);
+		e.str(p.price);
+		
+		int flags = (p.indicators != null ? 1 : 0) 
+					| (p.responsible != null ? 2 : 0)
+					| (p.responsible != null && p.responsible.administration != null ? 4 : 0)
+					| (p.responsible != null && p.responsible.address != null ? 8 : 0);
+		e.out.write(flags);
+		if ((flags & 4) != 0) {
+			ProcedureRecord.Administration a = p.responsible.administration;
+			e.str(a.code);
+			e.str(a.name);
+			e.str(a.bce);
+			e.str(a.level);
+			e.str(a.type);
+		}
+		if ((flags & 8) != 0) {
+			ProcedureRecord.Address a = p.responsible.address;
+			e.str(a.mainCode);
+			e.str(a.subCode);
+			e.str(a.nisCode);
+			e.str(a.zipCode);
+			e.str(a.city);
+			e.str(a.building);
+			e.str(a.street);
+			e.str(a.number);
+			e.str(a.box);
+			e.str(a.phone);
+			e.str(a.email);
+			e.str(a.website);
+			e.str(a.contactPhone);
+			e.str(a.contactSite);
+		}
+		
+		encodeLinks(e, p.forms);
+		encodeLinks(e, p.legal);
+		encodeLinks(e, p.additional);
+		
+		e.count(p.cities);
+		for (MunicipalityProjection m: p.cities) {
+			e.str(m.getNisCode());
+			e.str(m.getZipCode());
+			e.str(m.getName());
+		}
+		e.count(p.sectors);
+		for (SectorProjection s: p.sectors) {
+			e.str(s.getCode());
+			e.str(s.getName());
+			e.str(s.getLanguage());
+			e.str(s.getDisplay());
+		}
+		e.count(p.activities);
+		for (ActivityProjection a: p.activities) {
+			e.str(a.getCode());
+			e.str(a.getSector());
+			e.str(a.getName());
+			e.str(a.getLanguage());
+			e.str(a.getDisplay());
+		}
+		return e.out.toByteArray();
+	}
+	
+	/**
+	 * Decode a procedure record
+	 * 
+	 * @param buf buffer, positioned at the start of the record
+	 * @param strings string table
+	 * @return record
+	 */
+	public static ProcedureRecord decode(ByteBuffer buf, String[] strings) {
+		Decoder d = new Decoder(buf, strings);
+		ProcedureRecord p = new ProcedureRecord();
+		p.id = d.str();
+		p.language = d.str();
+		p.lifecycle = d.str();
+		p.title = d.str();
+		p.desc = d.str();
+		p.summary = d.str();
+		p.applies = d.str();
+		p.appliesExcept = d.str();
+		p.authPeriod = d.str();
+		p.condition = d.str();
+		p.formalities = d.str();
+		p.frequency = d.str();
+		p.price = d.str();
+		
+		int flags = buf.get();
+		if ((flags & 1) != 0) {
+			p.indicators = new ProcedureRecord.Indicator();
+		}
+		if ((flags & 2) != 0) {
+			p.responsible = new ProcedureRecord.Responsible();
+		}
+		if ((flags & 4) != 0) {
+			ProcedureRecord.Administration a = new ProcedureRecord.Administration();
+			a.code = d.str();
+			a.name = d.str();
+			a.bce = d.str();
+			a.level = d.str();
+			a.type = d.str();
+			p.responsible.administration = a;
+		}
+		if ((flags & 8) != 0) {
+			ProcedureRecord.Address a = new ProcedureRecord.Address();
+			a.mainCode = d.str();
+			a.subCode = d.str();
+			a.nisCode = d.str();
+			a.zipCode = d.str();
+			a.city = d.str();
+			a.building = d.str();
+			a.street = d.str();
+			a.number = d.str();
+			a.box = d.str();
+			a.phone = d.str();
+			a.email = d.str();
+			a.website = d.str();
+			a.contactPhone = d.str();
+			a.contactSite = d.str();
+			p.responsible.address = a;
+		}
+		
+		decodeLinks(d, p.forms);
+		decodeLinks(d, p.legal);
+		decodeLinks(d, p.additional);
+		
+		for (int i = d.count(); i > 0; i--) {
+			ProcedureRecord.Municipality m = new ProcedureRecord.Municipality();
+			m.nisCode = d.str();
+			m.zipCode = d.str();
+			m.name = d.str();
+			p.cities.add(m);
+		}
+		for (int i = d.count(); i > 0; i--) {
+			ProcedureRecord.Sector s = new ProcedureRecord.Sector();
+			s.code = d.str();
+			s.name = d.str();
+			s.language = d.str();
+			s.display = d.str();
+			p.sectors.add(s);
+		}
+		for (int i = d.count(); i > 0; i--) {
+			ProcedureRecord.Activity a = new ProcedureRecord.Activity();
+			a.code = d.str();
+			a.sector = d.str();
+			a.name = d.str();
+			a.language = d.str();
+			a.display = d.str();
+			p.activities.add(a);
+		}
+		return p;
+	}
+}
@@ -0,0 +1,502 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.stax;
+
+import be.fedict.lodtools.cpsv.proj.ActivityProjection;
+import be.fedict.lodtools.cpsv.proj.LinkProjection;
+import be.fedict.lodtools.cpsv.proj.MunicipalityProjection;
+import be.fedict.lodtools.cpsv.proj.SectorProjection;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Single-pass StAX parser for EDRL procedures, as an alternative to the
+ * XMLBeam projections (which build a DOM and evaluate an XPath per getter).
+ * 
+ * Text values follow the XPath string value: the text of all descendants,
+ * null when the element is missing. When an element occurs more than once,
+ * the first one is used.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class StaxProcedureReader {
+	private final static XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+	static {
+		FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+	
+	private final static String ROOT = "fedict.edrl.domain.Procedure";
+	private final static String LINK = "fedict.edrl.domain.Link";
+	private final static String MUNICIPALITY = "fedict.edrl.domain.Municipality";
+	private final static String SECTOR = "fedict.edrl.domain.Sector";
+	private final static String ACTIVITY = "fedict.edrl.domain.Activity";
+	
+	/**
+	 * Move to the next child element
+	 * 
+	 * @param r XML reader
+	 * @return true if positioned on a child, false at the end of the parent
+	 * @throws XMLStreamException 
+	 */
+	private static boolean nextChild(XMLStreamReader r) throws XMLStreamException {
+		while (r.hasNext()) {
+			int ev = r.next();
+			if (ev == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+			if (ev == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Skip current element and all its children
+	 * 
+	 * @param r XML reader
+	 * @throws XMLStreamException 
+	 */
+	private static void skip(XMLStreamReader r) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && r.hasNext()) {
+			int ev = r.next();
+			if (ev == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (ev == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+	
+	/**
+	 * Get text of current element, including text of child elements
+	 * 
+	 * @param r XML reader
+	 * @return text, empty string if there is no text
+	 * @throws XMLStreamException 
+	 */
+	private static String text(XMLStreamReader r) throws XMLStreamException {
+		String str = null;
+		StringBuilder sb = null;
+		int depth = 1;
+		while (depth > 0 && r.hasNext()) {
+			switch (r.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+				case XMLStreamConstants.ENTITY_REFERENCE:
+					// avoid a builder for the common case of a single text node
+					if (str == null) {
+						str = r.getText();
+					} else {
+						if (sb == null) {
+							sb = new StringBuilder(str);
+						}
+						sb.append(r.getText());
+					}
+					break;
+			}
+		}
+		if (sb != null) {
+			return sb.toString();
+		}
+		return (str != null) ? str : "";
+	}
+	
+	/**
+	 * Get text of the current element, unless a value was already set
+	 * 
+	 * @param r XML reader
+	 * @param cur current value
+	 * @return current value or text
+	 * @throws XMLStreamException 
+	 */
+	private static String first(XMLStreamReader r, String cur) throws XMLStreamException {
+		if (cur != null) {
+			skip(r);
+			return cur;
+		}
+		return text(r);
+	}
+	
+	/**
+	 * Read list of links
+	 * 
+	 * @param r XML reader
+	 * @param links list to add links to
+	 * @throws XMLStreamException 
+	 */
+	private static void readLinks(XMLStreamReader r, List<LinkProjection> links) throws XMLStreamException {
+		while (nextChild(r)) {
+			if (!LINK.equals(r.getLocalName())) {
+				skip(r);
+				continue;
+			}
+			ProcedureRecord.Link l = new ProcedureRecord.Link();
+			while (nextChild(r)) {
+				switch (r.getLocalName()) {
+					case "url": l.url = first(r, l.url); break;
+					case "description": l.description = first(r, l.description); break;
+					case "utility": l.utility = first(r, l.utility); break;
+					default: skip(r);
+				}
+			}
+			links.add(l);
+		}
+	}
+	
+	/**
+	 * Read list of municipalities
+	 * 
+	 * @param r XML reader
+	 * @param cities list to add municipalities to
+	 * @throws XMLStreamException 
+	 */
+	private static void readCities(XMLStreamReader r, List<MunicipalityProjection> cities) throws XMLStreamException {
+		while (nextChild(r)) {
+			if (!MUNICIPALITY.equals(r.getLocalName())) {
+				skip(r);
+				continue;
+			}
+			ProcedureRecord.Municipality m = new ProcedureRecord.Municipality();
+			while (nextChild(r)) {
+				switch (r.getLocalName()) {
+					case "nisCode": m.nisCode = first(r, m.nisCode); break;
+					case "postCode": m.zipCode = first(r, m.zipCode); break;
+					case "name": m.name = first(r, m.name); break;
+					default: skip(r);
+				}
+			}
+			cities.add(m);
+		}
+	}
+	
+	/**
+	 * Read list of sectors
+	 * 
+	 * @param r XML reader
+	 * @param sectors list to add sectors to
+	 * @throws XMLStreamException 
+	 */
+	private static void readSectors(XMLStreamReader r, List<SectorProjection> sectors) throws XMLStreamException {
+		while (nextChild(r)) {
+			if (!SECTOR.equals(r.getLocalName())) {
+				skip(r);
+				continue;
+			}
+			ProcedureRecord.Sector s = new ProcedureRecord.Sector();
+			while (nextChild(r)) {
+				switch (r.getLocalName()) {
+					case "code": s.code = first(r, s.code); break;
+					case "name": s.name = first(r, s.name); break;
+					case "language": s.language = first(r, s.language); break;
+					case "displaySector": s.display = first(r, s.display); break;
+					default: skip(r);
+				}
+			}
+			sectors.add(s);
+		}
+	}
+	
+	/**
+	 * Read list of activities
+	 * 
+	 * @param r XML reader
+	 * @param activities list to add activities to
+	 * @throws XMLStreamException 
+	 */
+	private static void readActivities(XMLStreamReader r, List<ActivityProjection> activities) 
+														throws XMLStreamException {
+		while (nextChild(r)) {
+			if (!ACTIVITY.equals(r.getLocalName())) {
+				skip(r);
+				continue;
+			}
+			ProcedureRecord.Activity a = new ProcedureRecord.Activity();
+			while (nextChild(r)) {
+				switch (r.getLocalName()) {
+					case "activityCode": a.code = first(r, a.code); break;
+					case "sectorCode": a.sector = first(r, a.sector); break;
+					case "name": a.name = first(r, a.name); break;
+					case "language": a.language = first(r, a.language); break;
+					case "displayActivity": a.display = first(r, a.display); break;
+					default: skip(r);
+				}
+			}
+			activities.add(a);
+		}
+	}
+	
+	/**
+	 * Read administration
+	 * 
+	 * @param r XML reader
+	 * @return administration
+	 * @throws XMLStreamException 
+	 */
+	private static ProcedureRecord.Administration readAdministration(XMLStreamReader r) 
+														throws XMLStreamException {
+		ProcedureRecord.Administration a = new ProcedureRecord.Administration();
+		while (nextChild(r)) {
+			switch (r.getLocalName()) {
+				case "code": a.code = first(r, a.code); break;
+				case "name": a.name = first(r, a.name); break;
+				case "companyNumber": a.bce = first(r, a.bce); break;
+				case "politicalLevelCode": a.level = first(r, a.level); break;
+				case "type": a.type = first(r, a.type); break;
+				default: skip(r);
+			}
+		}
+		return a;
+	}
+	
+	/**
+	 * Read address
+	 * 
+	 * @param r XML reader
+	 * @return address
+	 * @throws XMLStreamException 
+	 */
+	private static ProcedureRecord.Address readAddress(XMLStreamReader r) 
+														throws XMLStreamException {
+		ProcedureRecord.Address a = new ProcedureRecord.Address();
+		while (nextChild(r)) {
+			switch (r.getLocalName()) {
+				case "addressId":
+					while (nextChild(r)) {
+						switch (r.getLocalName()) {
+							case "mainCode": a.mainCode = first(r, a.mainCode); break;
+							case "subCode": a.subCode = first(r, a.subCode); break;
+							default: skip(r);
+						}
+					}
+					break;
+				case "nisCode": a.nisCode = first(r, a.nisCode); break;
+				case "postcode": a.zipCode = first(r, a.zipCode); break;
+				case "municipality": a.city = first(r, a.city); break;
+				case "building": a.building = first(r, a.building); break;
+				case "street": a.street = first(r, a.street); break;
+				case "number": a.number = first(r, a.number); break;
+				case "box": a.box = first(r, a.box); break;
+				case "telephone": a.phone = first(r, a.phone); break;
+				case "email": a.email = first(r, a.email); break;
+				case "website": a.website = first(r, a.website); break;
+				case "contactCenterTelephone": 
+					a.contactPhone = first(r, a.contactPhone); break;
+				case "contactCenter": a.contactSite = first(r, a.contactSite); break;
+				default: skip(r);
+			}
+		}
+		return a;
+	}
+	
+	/**
+	 * Read responsible administration
+	 * 
+	 * @param r XML reader
+	 * @param p procedure record
+	 * @param shared also read language-independent parts
+	 * @throws XMLStreamException 
+	 */
+	private static void readResponsible(XMLStreamReader r, ProcedureRecord p, boolean shared) 
+														throws XMLStreamException {
+		boolean isFirst = (p.responsible == null);
+		if (isFirst) {
+			p.responsible = new ProcedureRecord.Responsible();
+		}
+		ProcedureRecord.Responsible resp = p.responsible;
+		
+		while (nextChild(r)) {
+			switch (r.getLocalName()) {
+				case "municipalities":
+					if (shared) {
+						readCities(r, p.cities);
+					} else {
+						skip(r);
+					}
+					break;
+				case "administration":
+					if (isFirst && resp.administration == null) {
+						resp.administration = readAdministration(r);
+					} else {
+						skip(r);
+					}
+					break;
+				case "address":
+					if (isFirst && resp.address == null) {
+						resp.address = readAddress(r);
+					} else {
+						skip(r);
+					}
+					break;
+				default: 
+					skip(r);
+			}
+		}
+	}
+	
+	/**
+	 * Read procedure
+	 * 
+	 * @param r XML reader
+	 * @param p procedure record
+	 * @param shared also read language-independent parts
+	 * @throws XMLStreamException 
+	 */
+	private static void readProcedure(XMLStreamReader r, ProcedureRecord p, boolean shared) 
+														throws XMLStreamException {
+		while (nextChild(r)) {
+			switch (r.getLocalName()) {
+				case "contentId": p.id = first(r, p.id); break;
+				case "language": p.language = first(r, p.language); break;
+				case "lifecycle": p.lifecycle = first(r, p.lifecycle); break;
+				case "title": p.title = first(r, p.title); break;
+				case "shortDescription": p.desc = first(r, p.desc); break;
+				case "applicationSummary": p.summary = first(r, p.summary); break;
+				case "applicableTo": p.applies = first(r, p.applies); break;
+				case "applicableExceptions": 
+					p.appliesExcept = first(r, p.appliesExcept); break;
+				case "authorizationPeriod": p.authPeriod = first(r, p.authPeriod); break;
+				case "conditions": p.condition = first(r, p.condition); break;
+				case "formalities": p.formalities = first(r, p.formalities); break;
+				case "frequency": p.frequency = first(r, p.frequency); break;
+				case "price": p.price = first(r, p.price); break;
+				case "forms": readLinks(r, p.forms); break;
+				case "legalBases": readLinks(r, p.legal); break;
+				case "additionalInformation": readLinks(r, p.additional); break;
+				case "commonSectors": 
+					if (shared) {
+						readSectors(r, p.sectors);
+					} else {
+						skip(r);
+					}
+					break;
+				case "commonActivities": 
+					if (shared) {
+						readActivities(r, p.activities);
+					} else {
+						skip(r);
+					}
+					break;
+				case "responsibleAdministration": readResponsible(r, p, shared); break;
+				case "indicators":
+					if (p.indicators == null) {
+						p.indicators = new ProcedureRecord.Indicator();
+					}
+					skip(r);
+					break;
+				default: 
+					skip(r);
+			}
+		}
+	}
+	
+	/**
+	 * Read a procedure from an input stream.
+	 * Language-independent parts (municipalities, sectors and activities) 
+	 * can be skipped when they are already known from another language variant.
+	 * 
+	 * @param in input stream
+	 * @param shared also read language-independent parts
+	 * @return procedure record, with a null ID if this is not a procedure 
+	 * @throws IOException 
+	 */
+	public static ProcedureRecord read(InputStream in, boolean shared) throws IOException {
+		ProcedureRecord p = new ProcedureRecord();
+		XMLStreamReader r = null;
+		try {
+			r = FACTORY.createXMLStreamReader(in);
+			if (nextChild(r) && ROOT.equals(r.getLocalName())) {
+				readProcedure(r, p, shared);
+			}
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		} finally {
+			if (r != null) {
+				try {
+					r.close();
+				} catch (XMLStreamException ex) {
+					// ignore
+				}
+			}
+		}
+		return p;
+	}
+	
+	/**
+	 * Read a procedure from an input stream
+	 * 
+	 * @param in input stream
+	 * @return procedure record, with a null ID if this is not a procedure 
+	 * @throws IOException 
+	 */
+	public static ProcedureRecord read(InputStream in) throws IOException {
+		return read(in, true);
+	}
+	
+	/**
+	 * Read a procedure from a file
+	 * 
+	 * @param f XML file
+	 * @param shared also read language-independent parts
+	 * @return procedure record, with a null ID if this is not a procedure 
+	 * @throws IOException 
+	 */
+	public static ProcedureRecord read(File f, boolean shared) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+			return read(in, shared);
+		}
+	}
+	
+	/**
+	 * Read a procedure from a file
+	 * 
+	 * @param f XML file
+	 * @return procedure record, with a null ID if this is not a procedure 
+	 * @throws IOException 
+	 */
+	public static ProcedureRecord read(File f) throws IOException {
+		return read(f, true);
+	}
+}
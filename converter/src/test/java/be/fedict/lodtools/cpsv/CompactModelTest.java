@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compact model must behave like a LinkedHashModel.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class CompactModelTest {
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	
+	private final static IRI A = F.createIRI("http://example.com/a");
+	private final static IRI B = F.createIRI("http://example.com/b");
+	private final static IRI C = F.createIRI("http://example.com/c");
+	
+	/**
+	 * Fill both models with the same random statements
+	 * 
+	 * @param m1 first model
+	 * @param m2 second model
+	 * @param n number of statements
+	 */
+	private static void fill(Model m1, Model m2, int n) {
+		Random rnd = new Random(42);
+		for (int i = 0; i < n; i++) {
+			IRI s = F.createIRI("http://example.com/s" + rnd.nextInt(50));
+			IRI p = F.createIRI("http://example.com/p" + rnd.nextInt(5));
+			Statement st = F.createStatement(s, p, F.createLiteral(rnd.nextInt(100)));
+			assertEquals(m2.add(st), m1.add(st));
+		}
+	}
+	
+	@Test
+	public void add() {
+		Model m = new CompactModel();
+		assertTrue(m.add(A, RDF.TYPE, B));
+		assertTrue(m.add(A, DCTERMS.TITLE, F.createLiteral("title", "nl")));
+		assertFalse(m.add(A, RDF.TYPE, B));
+		assertEquals(2, m.size());
+		assertTrue(m.contains(A, RDF.TYPE, B));
+		assertTrue(m.contains(A, DCTERMS.TITLE, F.createLiteral("title", "nl")));
+		assertFalse(m.contains(A, DCTERMS.TITLE, F.createLiteral("title", "fr")));
+		assertFalse(m.contains(C, null, null));
+	}
+	
+	@Test
+	public void addMany() {
+		Model m = new CompactModel();
+		Model expected = new LinkedHashModel();
+		fill(m, expected, 10_000);
+		assertEquals(expected.size(), m.size());
+		assertEquals(new HashSet<>(expected), new HashSet<>(m));
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void addNamedGraph() {
+		new CompactModel().add(A, RDF.TYPE, B, C);
+	}
+	
+	@Test
+	public void remove() {
+		Model m = new CompactModel();
+		m.add(A, RDF.TYPE, B);
+		m.add(A, RDF.TYPE, C);
+		m.add(B, RDF.TYPE, C);
+		assertTrue(m.remove(A, null, null));
+		assertFalse(m.remove(A, null, null));
+		assertEquals(1, m.size());
+		assertFalse(m.contains(A, null, null));
+		assertTrue(m.contains(B, RDF.TYPE, C));
+		
+		// can be added again after removal
+		assertTrue(m.add(A, RDF.TYPE, B));
+		assertEquals(2, m.size());
+	}
+	
+	@Test
+	public void removeMany() {
+		Model m = new CompactModel();
+		Model expected = new LinkedHashModel();
+		
+		// fill the arrays, remove most triples, and compact when adding again
+		int n = 8192;
+		for (int i = 0; i < n; i++) {
+			m.add(A, RDF.VALUE, F.createLiteral(i));
+			expected.add(A, RDF.VALUE, F.createLiteral(i));
+		}
+		for (int i = 0; i < n; i += 3) {
+			m.remove(A, RDF.VALUE, F.createLiteral(i));
+			expected.remove(A, RDF.VALUE, F.createLiteral(i));
+		}
+		m.filter(A, RDF.VALUE, null).removeIf(st -> ((Literal) st.getObject()).intValue() % 3 == 1);
+		expected.removeIf(st -> ((Literal) st.getObject()).intValue() % 3 == 1);
+		fill(m, expected, 1_000);
+		assertEquals(expected.size(), m.size());
+		assertEquals(new HashSet<>(expected), new HashSet<>(m));
+		assertEquals(expected.filter(A, null, null), m.filter(A, null, null));
+	}
+	
+	@Test
+	public void iteratorRemove() {
+		Model m = new CompactModel();
+		m.add(A, RDF.TYPE, B);
+		m.add(B, RDF.TYPE, C);
+		Iterator<Statement> it = m.iterator();
+		it.next();
+		it.remove();
+		assertEquals(1, m.size());
+		assertFalse(m.contains(A, RDF.TYPE, B));
+	}
+	
+	@Test
+	public void filter() {
+		Model m = new CompactModel();
+		Model expected = new LinkedHashModel();
+		fill(m, expected, 2_000);
+		
+		IRI s = F.createIRI("http://example.com/s7");
+		IRI p = F.createIRI("http://example.com/p3");
+		for (int i = 0; i < 2; i++) {
+			assertEquals(expected.filter(s, null, null), m.filter(s, null, null));
+			assertEquals(expected.filter(null, p, null), m.filter(null, p, null));
+			assertEquals(expected.filter(null, null, F.createLiteral(12)), 
+							m.filter(null, null, F.createLiteral(12)));
+			assertEquals(expected.filter(s, p, null), m.filter(s, p, null));
+			assertEquals(expected.filter(null, p, F.createLiteral(12)), 
+							m.filter(null, p, F.createLiteral(12)));
+			// indexes must be rebuilt after adding statements
+			fill(m, expected, 100);
+		}
+		assertEquals(0, m.filter(C, null, null).size());
+		assertEquals(0, m.filter(null, null, null, C).size());
+	}
+	
+	@Test
+	public void filterRemove() {
+		Model m = new CompactModel();
+		m.add(A, RDF.TYPE, B);
+		m.add(A, DCTERMS.TITLE, C);
+		m.add(B, RDF.TYPE, C);
+		m.filter(null, RDF.TYPE, null).clear();
+		assertEquals(1, m.size());
+		assertTrue(m.contains(A, DCTERMS.TITLE, C));
+	}
+	
+	@Test(expected = ConcurrentModificationException.class)
+	public void addWhileIterating() {
+		Model m = new CompactModel();
+		m.add(A, RDF.TYPE, B);
+		m.add(B, RDF.TYPE, C);
+		for (Statement st: m) {
+			m.add(C, RDF.TYPE, st.getSubject());
+		}
+	}
+	
+	@Test(expected = ConcurrentModificationException.class)
+	public void addWhileFiltering() {
+		Model m = new CompactModel();
+		m.add(A, RDF.TYPE, B);
+		m.add(A, RDF.TYPE, C);
+		for (Statement st: m.filter(A, null, null)) {
+			m.add(B, RDF.TYPE, st.getObject());
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pipelined lookups against a scripted HTTP server.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class EliBatchClientTest {
+	private final static String ELI = "http://www.ejustice.just.fgov.be/eli/wet/";
+	
+	private final Map<String,EliTestServer.Reply> replies = new HashMap<>();
+	private final List<String> handled = new ArrayList<>();
+	private EliTestServer server;
+	
+	/**
+	 * Reply based on the title, redirects end up in /final
+	 * 
+	 * @param target request target
+	 * @return reply
+	 */
+	private EliTestServer.Reply reply(String target) {
+		String title = EliTestServer.param(target, "q");
+		if (target.startsWith("/final")) {
+			return EliTestServer.Reply.ok(ELI + "final/" + title);
+		}
+		EliTestServer.Reply r = replies.get(title);
+		return (r != null) ? r : EliTestServer.Reply.ok(ELI + title);
+	}
+	
+	private static EliKey key(String title) {
+		return new EliKey("1999-05-03", "wet", title);
+	}
+	
+	private static IRI iri(String s) {
+		return SimpleValueFactory.getInstance().createIRI(s);
+	}
+	
+	/**
+	 * Look up the titles, recording status and IRIs in the order of the responses
+	 * 
+	 * @param throttle throttle
+	 * @param titles titles to look up
+	 * @return map of title to IRIs
+	 * @throws IOException 
+	 */
+	private Map<String,Set<IRI>> lookup(EliBatchClient.Throttle throttle, String... titles) 
+															throws IOException {
+		server = new EliTestServer(this::reply);
+		EliBatchClient client = new EliBatchClient(server.getURL(), 
+									RDFFormat.NTRIPLES.getDefaultMIMEType(), 2000);
+		List<EliKey> keys = new ArrayList<>();
+		for (String title: titles) {
+			keys.add(key(title));
+		}
+		Map<String,Set<IRI>> matched = new HashMap<>();
+		client.lookup(keys, throttle, (key, status, iris) -> {
+			handled.add(key.getTitle() + " " + status);
+			matched.put(key.getTitle(), iris);
+		});
+		return matched;
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		if (server != null) {
+			server.close();
+		}
+	}
+	
+	@Test
+	public void statusMix() throws IOException {
+		replies.put("b", EliTestServer.Reply.status(404));
+		replies.put("c", EliTestServer.Reply.status(500).delay(100));
+		replies.put("e", EliTestServer.Reply.status(404).delay(50));
+		
+		Map<String,Set<IRI>> matched = lookup(EliBatchClient.UNLIMITED, 
+												"a", "b", "c", "d", "e", "f");
+		assertEquals(Arrays.asList("a 200", "b 404", "c 500", "d 200", "e 404", "f 200"), 
+						handled);
+		assertEquals(Collections.singleton(iri(ELI + "a")), matched.get("a"));
+		assertEquals(Collections.emptySet(), matched.get("b"));
+		assertEquals(Collections.emptySet(), matched.get("c"));
+		assertEquals(Collections.singleton(iri(ELI + "d")), matched.get("d"));
+		assertEquals(Collections.singleton(iri(ELI + "f")), matched.get("f"));
+		assertEquals(1, server.getConnections());
+	}
+	
+	@Test
+	public void chunked() throws IOException {
+		replies.put("a", EliTestServer.Reply.ok(ELI + "a/1", ELI + "a/2").chunked());
+		replies.put("b", EliTestServer.Reply.status(404).chunked());
+		replies.put("c", EliTestServer.Reply.ok(ELI + "c").chunked());
+		
+		Map<String,Set<IRI>> matched = lookup(EliBatchClient.UNLIMITED, "a", "b", "c", "d");
+		assertEquals(Arrays.asList("a 200", "b 404", "c 200", "d 200"), handled);
+		assertEquals(2, matched.get("a").size());
+		assertEquals(Collections.singleton(iri(ELI + "c")), matched.get("c"));
+		assertEquals(Collections.singleton(iri(ELI + "d")), matched.get("d"));
+		assertEquals(1, server.getConnections());
+	}
+	
+	@Test
+	public void trailers() throws IOException {
+		replies.put("a", EliTestServer.Reply.ok(ELI + "a").trailer());
+		replies.put("b", EliTestServer.Reply.status(404).trailer());
+		
+		Map<String,Set<IRI>> matched = lookup(EliBatchClient.UNLIMITED, "a", "b", "c");
+		assertEquals(Arrays.asList("a 200", "b 404", "c 200"), handled);
+		assertEquals(Collections.singleton(iri(ELI + "a")), matched.get("a"));
+		assertEquals(Collections.singleton(iri(ELI + "c")), matched.get("c"));
+		assertEquals(1, server.getConnections());
+	}
+	
+	@Test
+	public void invalidBody() throws IOException {
+		replies.put("a", EliTestServer.Reply.body("text/html", 
+									"<html>\n<body>Error</body>\n</html>\n"));
+		replies.put("b", EliTestServer.Reply.body("application/n-triples", 
+									"<not an iri> <p> \"o\" .\n<" + ELI + "b> <p> \"o\" .\n"));
+		replies.put("c", EliTestServer.Reply.body("text/html; charset=UTF-8", 
+									"<" + ELI + "c> is not N-Triples\n"));
+		
+		Map<String,Set<IRI>> matched = lookup(EliBatchClient.UNLIMITED, "a", "b", "c", "d");
+		assertEquals(Arrays.asList("a 200", "b 200", "c 200", "d 200"), handled);
+		assertEquals(Collections.emptySet(), matched.get("a"));
+		assertEquals(Collections.singleton(iri(ELI + "b")), matched.get("b"));
+		assertEquals(Collections.emptySet(), matched.get("c"));
+		assertEquals(Collections.singleton(iri(ELI + "d")), matched.get("d"));
+	}
+	
+	@Test
+	public void proxy() throws IOException {
+		server = new EliTestServer(this::reply);
+		ProxySelector previous = ProxySelector.getDefault();
+		Proxy proxy = new Proxy(Proxy.Type.HTTP, 
+				new InetSocketAddress("127.0.0.1", new URL(server.getURL()).getPort()));
+		ProxySelector.setDefault(new ProxySelector() {
+			@Override
+			public List<Proxy> select(URI uri) {
+				return Collections.singletonList(proxy);
+			}
+
+			@Override
+			public void connectFailed(URI uri, SocketAddress sa, IOException ex) {
+			}
+		});
+		try {
+			// host does not exist, so it can only be reached through the proxy
+			EliBatchClient client = new EliBatchClient("http://eli.invalid", 
+										RDFFormat.NTRIPLES.getDefaultMIMEType(), 2000);
+			Map<String,Set<IRI>> matched = new HashMap<>();
+			client.lookup(Arrays.asList(key("a"), key("b")), EliBatchClient.UNLIMITED, 
+				(key, status, iris) -> matched.put(key.getTitle(), iris));
+			assertEquals(Collections.singleton(iri(ELI + "a")), matched.get("a"));
+			assertEquals(Collections.singleton(iri(ELI + "b")), matched.get("b"));
+			assertTrue(server.getRequests().get(0).startsWith("http://eli.invalid/"));
+		} finally {
+			ProxySelector.setDefault(previous);
+		}
+	}
+	
+	@Test
+	public void closeMidBatch() throws IOException {
+		replies.put("b", EliTestServer.Reply.ok(ELI + "b").close());
+		
+		Map<String,Set<IRI>> matched = lookup(EliBatchClient.UNLIMITED, "a", "b", "c", "d");
+		assertEquals(Arrays.asList("a 200", "b 200", "c 200", "d 200"), handled);
+		assertEquals(Collections.singleton(iri(ELI + "c")), matched.get("c"));
+		assertEquals(Collections.singleton(iri(ELI + "d")), matched.get("d"));
+		// remaining requests are sent again on a new connection
+		assertEquals(2, server.getConnections());
+		assertEquals(4, server.getRequests().size());
+	}
+	
+	@Test
+	public void interim() throws IOException {
+		replies.put("a", EliTestServer.Reply.ok(ELI + "a").interim());
+		replies.put("b", EliTestServer.Reply.status(404).interim());
+		
+		Map<String,Set<IRI>> matched = lookup(EliBatchClient.UNLIMITED, "a", "b", "c");
+		assertEquals(Arrays.asList("a 200", "b 404", "c 200"), handled);
+		assertEquals(Collections.singleton(iri(ELI + "a")), matched.get("a"));
+		assertEquals(Collections.singleton(iri(ELI + "c")), matched.get("c"));
+	}
+	
+	@Test
+	public void redirect() throws IOException {
+		replies.put("a", EliTestServer.Reply.redirect(301, "/final?q=a"));
+		replies.put("b", EliTestServer.Reply.redirect(303, "/other?q=c"));
+		replies.put("c", EliTestServer.Reply.redirect(307, "final?q=c"));
+		
+		Map<String,Set<IRI>> matched = lookup(EliBatchClient.UNLIMITED, "a", "b", "d");
+		assertEquals(Arrays.asList("a 200", "b 200", "d 200"), handled);
+		assertEquals(Collections.singleton(iri(ELI + "final/a")), matched.get("a"));
+		// redirect to a redirect, with a relative location
+		assertEquals(Collections.singleton(iri(ELI + "final/c")), matched.get("b"));
+		assertEquals(Collections.singleton(iri(ELI + "d")), matched.get("d"));
+	}
+	
+	@Test
+	public void redirectNotFound() throws IOException {
+		replies.put("a", EliTestServer.Reply.redirect(302, "/missing?q=x"));
+		replies.put("x", EliTestServer.Reply.status(404));
+		
+		lookup(EliBatchClient.UNLIMITED, "a", "b");
+		assertEquals(Arrays.asList("a 404", "b 200"), handled);
+	}
+	
+	@Test
+	public void throttled() throws IOException {
+		AtomicInteger waits = new AtomicInteger();
+		// no request is allowed without waiting, so none are written ahead
+		EliBatchClient.Throttle throttle = new EliBatchClient.Throttle() {
+			@Override
+			public void acquire() {
+				waits.incrementAndGet();
+			}
+
+			@Override
+			public boolean tryAcquire() {
+				return false;
+			}
+		};
+		replies.put("b", EliTestServer.Reply.status(404));
+		
+		lookup(throttle, "a", "b", "c");
+		assertEquals(Arrays.asList("a 200", "b 404", "c 200"), handled);
+		assertEquals(3, waits.get());
+		assertEquals(1, server.getConnections());
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Normalization and equality of ELI lookup keys.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class EliKeyTest {
+	@Test
+	public void normalize() {
+		assertEquals("wet betreffende de test", EliKey.normalize("  Wet\tbetreffende \n de TEST "));
+		assertEquals("", EliKey.normalize(" \t "));
+	}
+	
+	@Test
+	public void equalsNormalized() {
+		EliKey k1 = new EliKey("1999-05-03", "wet", "Wet  betreffende de test");
+		EliKey k2 = new EliKey("1999-05-03", "wet", "wet betreffende de TEST");
+		assertEquals(k1, k2);
+		assertEquals(k1.hashCode(), k2.hashCode());
+		// original title is kept for the lookup
+		assertEquals("Wet  betreffende de test", k1.getTitle());
+	}
+	
+	@Test
+	public void notEquals() {
+		EliKey k = new EliKey("1999-05-03", "wet", "Wet betreffende de test");
+		assertNotEquals(k, new EliKey("1999-05-04", "wet", "Wet betreffende de test"));
+		assertNotEquals(k, new EliKey("1999-05-03", "decreet", "Wet betreffende de test"));
+		assertNotEquals(k, new EliKey("1999-05-03", "wet", "Wet betreffende de proef"));
+	}
+}
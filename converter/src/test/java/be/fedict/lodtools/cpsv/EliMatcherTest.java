@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ELI matching against an in-process stub of the ELI service.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class EliMatcherTest {
+	private final static String ELI = "http://www.ejustice.just.fgov.be/eli/wet/";
+	
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	private EliTestServer server;
+	private EliCache cache;
+	
+	/**
+	 * Reply of the stub, based on the title
+	 * 
+	 * @param target request target
+	 * @return reply
+	 */
+	private static EliTestServer.Reply reply(String target) {
+		String title = EliTestServer.param(target, "q");
+		if (title.contains("onbekend")) {
+			return EliTestServer.Reply.status(404);
+		}
+		if (title.contains("traag")) {
+			return EliTestServer.Reply.ok(ELI + "slow").delay(2000);
+		}
+		return EliTestServer.Reply.ok(ELI + EliTestServer.param(target, "date") + "/1",
+										ELI + EliTestServer.param(target, "date") + "/2");
+	}
+	
+	private static EliKey key(String title) {
+		return new EliKey("1999-05-03", "wet", title);
+	}
+	
+	private static IRI iri(String s) {
+		return SimpleValueFactory.getInstance().createIRI(s);
+	}
+	
+	private EliCache cache(int ttlHit, int ttlMiss, boolean offline) throws IOException {
+		cache = new EliCache(new File(tmp.getRoot(), "eli-cache.tsv"), ttlHit, ttlMiss, offline);
+		EliMatcher.setCache(cache);
+		return cache;
+	}
+	
+	@Before
+	public void setUp() throws IOException {
+		server = new EliTestServer(EliMatcherTest::reply);
+		EliMatcher.setEndpoint(server.getURL());
+		EliMatcher.setTimeout(5000);
+		EliMatcher.setRateLimit(0);
+		EliMatcher.setOffline(false);
+		EliMatcher.setCache(null);
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		EliMatcher.setCache(null);
+		EliMatcher.setOffline(false);
+		if (cache != null) {
+			cache.close();
+		}
+		server.close();
+	}
+	
+	@Test
+	public void matchHit() throws IOException {
+		cache(30, 7, false);
+		Set<IRI> iris = EliMatcher.match(key("Wet betreffende de test"));
+		
+		assertEquals(2, iris.size());
+		assertTrue(iris.contains(iri(ELI + "1999-05-03/1")));
+		assertEquals(iris, cache.get(key("Wet betreffende de test")));
+		assertEquals(1, server.getRequests().size());
+		assertEquals("Wet betreffende de test", 
+					EliTestServer.param(server.getRequests().get(0), "q"));
+	}
+	
+	@Test
+	public void matchNotFoundIsCached() throws IOException {
+		cache(30, 7, false);
+		long notFound = Metrics.counter("eli.notfound").get();
+		
+		assertTrue(EliMatcher.match(key("Wet onbekend")).isEmpty());
+		assertEquals(Collections.emptySet(), cache.get(key("Wet onbekend")));
+		assertEquals(notFound + 1, Metrics.counter("eli.notfound").get());
+		
+		// second lookup, also with different whitespace and case, uses the cache
+		assertTrue(EliMatcher.match(key("wet  ONBEKEND")).isEmpty());
+		assertEquals(1, server.getRequests().size());
+	}
+	
+	@Test
+	public void matchTimeout() throws IOException {
+		cache(30, 7, false);
+		EliMatcher.setTimeout(200);
+		long errors = Metrics.counter("eli.errors").get();
+		
+		long start = System.nanoTime();
+		assertTrue(EliMatcher.match(key("Wet traag")).isEmpty());
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+		assertEquals(errors + 1, Metrics.counter("eli.errors").get());
+		// errors are not cached, so the lookup is retried next time
+		assertNull(cache.get(key("Wet traag")));
+	}
+	
+	@Test
+	public void matchOffline() throws IOException {
+		EliMatcher.setOffline(true);
+		assertTrue(EliMatcher.match(key("Wet betreffende de test")).isEmpty());
+		assertEquals(0, server.getRequests().size());
+	}
+	
+	@Test
+	public void matchOfflineUsesExpiredEntries() throws IOException {
+		long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(100);
+		Files.write(new File(tmp.getRoot(), "eli-cache.tsv").toPath(), 
+			(old + "\t1999-05-03\twet\twet oud\t" + ELI + "old\n").getBytes(StandardCharsets.UTF_8));
+		cache(30, 7, true);
+		EliMatcher.setOffline(true);
+		
+		assertEquals(Collections.singleton(iri(ELI + "old")), EliMatcher.match(key("Wet oud")));
+		assertEquals(0, server.getRequests().size());
+	}
+	
+	@Test
+	public void ttlExpiry() throws IOException {
+		long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(10);
+		Files.write(new File(tmp.getRoot(), "eli-cache.tsv").toPath(), 
+			(old + "\t1999-05-03\twet\twet oud\t" + ELI + "old\n"
+			+ old + "\t1999-05-03\twet\twet oud onbekend\t\n").getBytes(StandardCharsets.UTF_8));
+		
+		// positive result still valid, negative result expired
+		cache(30, 7, false);
+		assertEquals(Collections.singleton(iri(ELI + "old")), EliMatcher.match(key("Wet oud")));
+		assertTrue(EliMatcher.match(key("Wet oud onbekend")).isEmpty());
+		assertEquals(1, server.getRequests().size());
+		cache.close();
+		
+		// both expired
+		cache(5, 5, false);
+		assertEquals(2, EliMatcher.match(key("Wet oud")).size());
+		assertEquals(2, server.getRequests().size());
+	}
+	
+	@Test
+	public void corruptLinesAreSkipped() throws IOException {
+		long now = System.currentTimeMillis();
+		Files.write(new File(tmp.getRoot(), "eli-cache.tsv").toPath(), 
+			("garbage\t1999-05-03\twet\twet kapot\t" + ELI + "broken\n"
+			+ now + "\t1999-05-03\twet\twet ongeldig\tnot-an-iri\n"
+			+ now + "\t1999-05-03\twet\n"
+			+ now + "\t1999-05-03\twet\twet oud\t" + ELI + "old\n").getBytes(StandardCharsets.UTF_8));
+		cache(30, 7, false);
+		
+		assertEquals(Collections.singleton(iri(ELI + "old")), cache.get(key("Wet oud")));
+		assertNull(cache.get(key("Wet kapot")));
+		assertNull(cache.get(key("Wet ongeldig")));
+	}
+	
+	@Test
+	public void rateLimit() {
+		EliMatcher.setRateLimit(10);
+		long start = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			EliMatcher.match(key("Wet nummer " + i));
+		}
+		// first request is immediate, then one every 100 ms
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(350));
+		assertEquals(5, server.getRequests().size());
+		EliMatcher.setRateLimit(0);
+	}
+	
+	@Test
+	public void matchBatch() throws IOException {
+		cache(30, 7, false);
+		cache.put(key("Wet in cache"), Collections.singleton(iri(ELI + "cached")));
+		
+		Map<EliKey,Set<IRI>> matched = EliMatcher.match(Arrays.asList(
+				key("Wet in cache"), key("Wet een"), key("Wet onbekend"), key("Wet twee")));
+		
+		assertEquals(Collections.singleton(iri(ELI + "cached")), matched.get(key("Wet in cache")));
+		assertEquals(2, matched.get(key("Wet een")).size());
+		assertTrue(matched.get(key("Wet onbekend")).isEmpty());
+		assertEquals(2, matched.get(key("Wet twee")).size());
+		assertEquals(3, server.getRequests().size());
+		assertEquals(1, server.getConnections());
+		assertEquals(Collections.emptySet(), cache.get(key("Wet onbekend")));
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import be.fedict.lodtools.cpsv.vocab.CPSV;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Asynchronous ELI matching of models against an in-process stub of the ELI service.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class EliStageTest {
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	private final static String ELI = "http://www.ejustice.just.fgov.be/eli/wet/";
+	
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger maxActive = new AtomicInteger();
+	
+	private EliTestServer server;
+	
+	/**
+	 * Reply of the stub, based on the title.
+	 * Every request takes some time, to measure the number of concurrent requests.
+	 * 
+	 * @param target request target
+	 * @return reply
+	 */
+	private EliTestServer.Reply reply(String target) {
+		String title = EliTestServer.param(target, "q");
+		if (title.contains("traag")) {
+			return EliTestServer.Reply.ok(ELI + "slow").delay(2000);
+		}
+		maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+		try {
+			Thread.sleep(50);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} finally {
+			active.decrementAndGet();
+		}
+		return EliTestServer.Reply.ok(ELI + EliTestServer.param(target, "date") + "/" 
+										+ title.length());
+	}
+	
+	/**
+	 * Add a framework with one or more titles to the model
+	 * 
+	 * @param m model
+	 * @param id local name of the framework
+	 * @param titles titles
+	 * @return IRI of the framework
+	 */
+	private static IRI framework(Model m, String id, String... titles) {
+		IRI fw = F.createIRI("http://cpsv.test/framework/" + id);
+		m.add(fw, RDF.TYPE, CPSV.CLASS_FRAMEWORK);
+		for (String title: titles) {
+			m.add(fw, DCTERMS.TITLE, F.createLiteral(title, "nl"));
+		}
+		return fw;
+	}
+	
+	private static String title(int i) {
+		return "Wet van 3 mei 1999 betreffende de test nummer " + i;
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+		server = new EliTestServer(this::reply);
+		EliMatcher.setEndpoint(server.getURL());
+		EliMatcher.setTimeout(5000);
+		EliMatcher.setRateLimit(0);
+		EliMatcher.setOffline(false);
+		EliMatcher.setCache(null);
+		assertNotNull(EliMatcher.parse(title(1)));
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		server.close();
+	}
+	
+	@Test
+	public void merge() throws Exception {
+		Model m = new LinkedHashModel();
+		IRI fw1 = framework(m, "1", title(1), title(22));
+		IRI fw2 = framework(m, "2", title(1));
+		IRI fw3 = framework(m, "3", "Geen wettekst");
+		
+		try (EliStage stage = new EliStage(2, 10)) {
+			assertTrue(m == stage.matchAsync(m).get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(2, m.filter(fw1, DCTERMS.IDENTIFIER, null).size());
+		assertEquals(1, m.filter(fw2, DCTERMS.IDENTIFIER, null).size());
+		assertTrue(m.filter(fw1, DCTERMS.IDENTIFIER, null).objects()
+						.containsAll(m.filter(fw2, DCTERMS.IDENTIFIER, null).objects()));
+		assertEquals(0, m.filter(fw3, DCTERMS.IDENTIFIER, null).size());
+		// the title shared by both frameworks is only looked up once
+		assertEquals(2, server.getRequestCount());
+	}
+	
+	@Test
+	public void concurrencyBound() throws Exception {
+		Model m = new LinkedHashModel();
+		for (int i = 0; i < 12; i++) {
+			framework(m, "fw" + i, title(i));
+		}
+		try (EliStage stage = new EliStage(2, 1)) {
+			stage.matchAsync(m).get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(12, m.filter(null, DCTERMS.IDENTIFIER, null).size());
+		assertEquals(12, server.getRequestCount());
+		assertTrue("Too many concurrent requests: " + maxActive.get(), maxActive.get() <= 2);
+	}
+	
+	@Test
+	public void timeout() throws Exception {
+		EliMatcher.setTimeout(200);
+		Model m = new LinkedHashModel();
+		IRI slow = framework(m, "slow", "Wet van 3 mei 1999 betreffende de traag");
+		IRI fast = framework(m, "fast", title(1));
+		
+		long start = System.nanoTime();
+		try (EliStage stage = new EliStage(2, 1)) {
+			stage.matchAsync(m).get(5, TimeUnit.SECONDS);
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+		// the timed-out lookup does not prevent the others from being merged
+		assertEquals(0, m.filter(slow, DCTERMS.IDENTIFIER, null).size());
+		assertEquals(1, m.filter(fast, DCTERMS.IDENTIFIER, null).size());
+	}
+	
+	@Test
+	public void reset() throws Exception {
+		try (EliStage stage = new EliStage(2, 10)) {
+			Model m1 = new LinkedHashModel();
+			framework(m1, "1", title(1));
+			stage.matchAsync(m1).get(5, TimeUnit.SECONDS);
+			assertEquals(1, server.getRequestCount());
+			
+			// same title in another model is not looked up again
+			Model m2 = new LinkedHashModel();
+			IRI fw2 = framework(m2, "2", title(1));
+			stage.matchAsync(m2).get(5, TimeUnit.SECONDS);
+			assertEquals(1, server.getRequestCount());
+			assertEquals(1, m2.filter(fw2, DCTERMS.IDENTIFIER, null).size());
+			
+			// until the lookups are forgotten
+			stage.reset();
+			Model m3 = new LinkedHashModel();
+			IRI fw3 = framework(m3, "3", title(1));
+			stage.matchAsync(m3).get(5, TimeUnit.SECONDS);
+			assertEquals(2, server.getRequestCount());
+			assertEquals(1, m3.filter(fw3, DCTERMS.IDENTIFIER, null).size());
+		}
+	}
+}
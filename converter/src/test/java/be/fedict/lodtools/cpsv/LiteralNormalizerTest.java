@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Conversion of HTML snippets into plain text literals.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class LiteralNormalizerTest {
+	@Test
+	public void nestedTags() {
+		assertEquals("ab c", LiteralNormalizer.normalize("<p>a<b>b</b></p><div>c</div>"));
+		assertEquals("een twee", 
+			LiteralNormalizer.normalize("<ul><li><p>een</p></li><li><i>twee</i></li></ul>"));
+		assertEquals("a b", LiteralNormalizer.normalize("a<br/>b"));
+	}
+	
+	@Test
+	public void unclosedTags() {
+		assertEquals("a b", LiteralNormalizer.normalize("<p>a<div>b"));
+		// not a tag, kept as text
+		assertEquals("a < b", LiteralNormalizer.normalize("a < b"));
+		assertEquals("a <b", LiteralNormalizer.normalize("a <b"));
+	}
+	
+	@Test
+	public void namedEntities() {
+		assertEquals("été & <hiver>", 
+			LiteralNormalizer.normalize("&eacute;t&eacute; &amp; &lt;hiver&gt;"));
+		assertEquals("a b", LiteralNormalizer.normalize("a&nbsp;&nbsp;b"));
+		assertEquals("afbreken", LiteralNormalizer.normalize("af&shy;breken"));
+		// unknown or unterminated, kept as text
+		assertEquals("&foo; AT&T", LiteralNormalizer.normalize("&foo; AT&T"));
+	}
+	
+	@Test
+	public void numericEntities() {
+		assertEquals("ééé", LiteralNormalizer.normalize("&#233;&#xE9;&#XE9;"));
+		assertEquals("😀", LiteralNormalizer.normalize("&#x1F600;"));
+		assertEquals("&#; &#x;", LiteralNormalizer.normalize("&#; &#x;"));
+		assertEquals("&#12a;", LiteralNormalizer.normalize("&#12a;"));
+	}
+	
+	@Test
+	public void whitespace() {
+		assertEquals("a b c", LiteralNormalizer.normalize("  a \t\n b\r\n c  "));
+		assertEquals("", LiteralNormalizer.normalize(" \t "));
+		assertNull(LiteralNormalizer.normalize(null));
+	}
+	
+	@Test
+	public void invalidXml() {
+		assertEquals("ab", LiteralNormalizer.normalize("a&#0;b"));
+		assertEquals("ab", LiteralNormalizer.normalize("a&#x1;&#xFFFE;&#xFFFF;b"));
+		assertEquals("ab", LiteralNormalizer.normalize("a&#xD800;&#xDC00;b"));
+		assertEquals("ab", LiteralNormalizer.normalize("a\u0000\u0001\u0008b"));
+		assertEquals("ab", LiteralNormalizer.normalize("a\uD800b\uDC00"));
+		assertEquals("a", LiteralNormalizer.normalize("a&#x110000;"));
+		// valid surrogate pair
+		assertEquals("a😀", LiteralNormalizer.normalize("a😀"));
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Incremental conversion, using the state of a previous run.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class ManifestTest {
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	private TestInput in;
+	private File out;
+	
+	private static IRI service(int nr) {
+		return F.createIRI(Consts.PUBSERV_BELGIF + "service/" + (1000 + nr) + "#id");
+	}
+	
+	private void run() throws IOException {
+		Main.main(new String[]{ in.getDir().getPath(), out.getPath(), "--incremental", "--offline" });
+	}
+	
+	@Before
+	public void setUp() throws IOException {
+		in = new TestInput(tmp.newFolder("in"), 5);
+		out = tmp.newFolder("out");
+	}
+	
+	@Test
+	public void changeAndDelete() throws IOException {
+		run();
+		Model full = TestInput.read(new File(out, "cpsv.nt"));
+		assertEquals(full, TestInput.read(new File(out, "cpsv-added.nt")));
+		assertTrue(TestInput.read(new File(out, "cpsv-removed.nt")).isEmpty());
+		
+		in.write(1, "Gewijzigd");
+		in.delete(2);
+		run();
+		
+		Model added = TestInput.read(new File(out, "cpsv-added.nt"));
+		Model removed = TestInput.read(new File(out, "cpsv-removed.nt"));
+		// only the titles of the changed procedure
+		assertEquals(4, added.size());
+		assertEquals(4, added.filter(service(1), DCTERMS.TITLE, null).size());
+		assertTrue(removed.contains(service(1), DCTERMS.TITLE, 
+								F.createLiteral("Procedure 1 (NL)", "nl")));
+		// everything about the deleted procedure, but not the administration also used by 5
+		assertTrue(removed.contains(service(2), null, null));
+		assertEquals(0, removed.filter(null, DCTERMS.TITLE, 
+								F.createLiteral("Administration 2 (NL)", "nl")).size());
+		assertFalse(removed.contains(service(3), null, null));
+		
+		// the previous output, with the changes applied, is the new output
+		Model expected = new LinkedHashModel(full);
+		expected.removeAll(removed);
+		expected.addAll(added);
+		assertEquals(expected, TestInput.read(new File(out, "cpsv.nt")));
+		
+		// nothing changed
+		run();
+		assertTrue(TestInput.read(new File(out, "cpsv-added.nt")).isEmpty());
+		assertTrue(TestInput.read(new File(out, "cpsv-removed.nt")).isEmpty());
+	}
+	
+	@Test
+	public void interruptedRun() throws IOException {
+		run();
+		File state = new File(out, "state");
+		
+		// changes that are not saved are discarded
+		Manifest mf = new Manifest(state);
+		Model m = mf.readPart("procedure1.xml");
+		mf.update("procedure1.xml", new LinkedHashModel(), new LinkedHashModel(), 
+															new LinkedHashModel());
+		mf.remove("procedure3.xml", new LinkedHashModel());
+		mf = new Manifest(state);
+		assertEquals(m, mf.readPart("procedure1.xml"));
+		assertTrue(mf.hasPart("procedure3.xml"));
+		
+		// so the next run still reports them
+		in.write(1, "Gewijzigd");
+		run();
+		assertEquals(4, TestInput.read(new File(out, "cpsv-added.nt")).size());
+		assertEquals(4, TestInput.read(new File(out, "cpsv-removed.nt")).size());
+	}
+	
+	@Test
+	public void interruptedCommit() throws IOException {
+		run();
+		File state = new File(out, "state");
+		File parts = new File(state, "parts");
+		
+		// converter stopped after writing the commit marker
+		Model m = new Manifest(state).readPart("procedure2.xml");
+		Files.copy(new File(parts, "procedure2.xml.brf").toPath(), 
+					new File(parts, "procedure1.xml.brf.tmp").toPath());
+		Files.write(new File(state, "commit.tsv").toPath(), 
+					"procedure3.xml\n".getBytes(StandardCharsets.UTF_8));
+		
+		// the commit is completed
+		Manifest mf = new Manifest(state);
+		assertEquals(m, mf.readPart("procedure1.xml"));
+		assertFalse(mf.hasPart("procedure3.xml"));
+		assertFalse(new File(state, "commit.tsv").exists());
+	}
+}
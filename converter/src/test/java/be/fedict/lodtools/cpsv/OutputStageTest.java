@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.Rio;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writing the output in different formats, compressed and split into shards.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class OutputStageTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	private Model full;
+	private File out;
+	
+	/**
+	 * Write the full output using an output stage
+	 * 
+	 * @param fmt RDF format
+	 * @param comp compression
+	 * @param split maximum size of a shard in bytes, or 0
+	 * @return output stage
+	 * @throws IOException 
+	 */
+	private OutputStage write(RDFFormat fmt, OutputStage.Compression comp, long split) 
+															throws IOException {
+		try (OutputStage stage = new OutputStage(out, "cpsv", fmt, comp, split, 2)) {
+			RDFHandler h = stage.handler();
+			h.startRDF();
+			for (Statement st: full) {
+				h.handleStatement(st);
+			}
+			h.endRDF();
+			stage.publish();
+			return stage;
+		}
+	}
+	
+	/**
+	 * Read an output file
+	 * 
+	 * @param f file
+	 * @param fmt RDF format
+	 * @param comp compression
+	 * @return RDF model
+	 * @throws IOException 
+	 */
+	private static Model read(File f, RDFFormat fmt, OutputStage.Compression comp) 
+															throws IOException {
+		InputStream in = new FileInputStream(f);
+		if (comp == OutputStage.Compression.GZIP) {
+			in = new GZIPInputStream(in);
+		} else if (comp == OutputStage.Compression.ZSTD) {
+			in = new ZstdInputStream(in);
+		}
+		try (InputStream is = in) {
+			return Rio.parse(is, "", fmt);
+		}
+	}
+	
+	/**
+	 * Read the output, single file or all shards
+	 * 
+	 * @param stage output stage
+	 * @param fmt RDF format
+	 * @param comp compression
+	 * @return RDF model
+	 * @throws IOException 
+	 */
+	private static Model read(OutputStage stage, RDFFormat fmt, OutputStage.Compression comp) 
+															throws IOException {
+		if (stage.file(0).exists()) {
+			return read(stage.file(0), fmt, comp);
+		}
+		Model m = new LinkedHashModel();
+		for (int i = 1; stage.file(i).exists(); i++) {
+			m.addAll(read(stage.file(i), fmt, comp));
+		}
+		return m;
+	}
+	
+	@Before
+	public void setUp() throws IOException {
+		TestInput in = new TestInput(tmp.newFolder("in"), 12);
+		File dir = tmp.newFolder("full");
+		Main.main(new String[]{ in.getDir().getPath(), dir.getPath(), "--offline" });
+		full = TestInput.read(new File(dir, "cpsv.nt"));
+		out = tmp.newFolder("out");
+	}
+	
+	@Test
+	public void splitGzip() throws IOException {
+		OutputStage stage = write(RDFFormat.NTRIPLES, OutputStage.Compression.GZIP, 2000);
+		assertEquals("cpsv-0001.nt.gz", stage.file(1).getName());
+		assertTrue(stage.file(3).exists());
+		assertFalse(stage.file(0).exists());
+		assertEquals(full, read(stage, RDFFormat.NTRIPLES, OutputStage.Compression.GZIP));
+	}
+	
+	@Test
+	public void formats() throws IOException {
+		for (RDFFormat fmt: new RDFFormat[]{ RDFFormat.NTRIPLES, RDFFormat.NQUADS, 
+															RDFFormat.BINARY }) {
+			for (OutputStage.Compression comp: OutputStage.Compression.values()) {
+				OutputStage stage = write(fmt, comp, 0);
+				assertEquals(full, read(stage, fmt, comp));
+			}
+		}
+	}
+	
+	@Test
+	public void republish() throws IOException {
+		OutputStage stage = write(RDFFormat.NTRIPLES, OutputStage.Compression.NONE, 1000);
+		int shards = 1;
+		while (stage.file(shards + 1).exists()) {
+			shards++;
+		}
+		assertTrue(shards > 2);
+		
+		// fewer shards, the old ones are removed
+		stage = write(RDFFormat.NTRIPLES, OutputStage.Compression.NONE, 4000);
+		assertFalse(stage.file(shards).exists());
+		assertEquals(full, read(stage, RDFFormat.NTRIPLES, OutputStage.Compression.NONE));
+		
+		// single file, no shards
+		stage = write(RDFFormat.NTRIPLES, OutputStage.Compression.NONE, 0);
+		assertTrue(stage.file(0).exists());
+		assertFalse(stage.file(1).exists());
+		assertEquals(full, read(stage, RDFFormat.NTRIPLES, OutputStage.Compression.NONE));
+	}
+	
+	@Test
+	public void compressionName() {
+		assertEquals(OutputStage.Compression.GZIP, OutputStage.Compression.get("gzip"));
+		assertEquals(OutputStage.Compression.ZSTD, OutputStage.Compression.get("ZSTD"));
+	}
+}
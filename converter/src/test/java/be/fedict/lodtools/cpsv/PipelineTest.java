@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Staged conversion using multiple threads.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class PipelineTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	private static List<String> names(int count) {
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			names.add(Integer.toString(i));
+		}
+		return names;
+	}
+	
+	private static void sleep() {
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@Test
+	public void order() throws IOException {
+		List<String> written = new ArrayList<>();
+		new Pipeline<Integer,String>(3, 3, 5).run(names(50), 
+			name -> { sleep(); return Integer.parseInt(name); },
+			i -> { sleep(); return "#" + i; },
+			s -> CompletableFuture.supplyAsync(() -> { sleep(); return s; }),
+			(name, s) -> {
+				assertEquals("#" + name, s);
+				written.add(name);
+			});
+		assertEquals(names(50), written);
+	}
+	
+	@Test
+	public void bounded() throws IOException {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger max = new AtomicInteger();
+		new Pipeline<String,String>(4, 4, 3).run(names(40), 
+			name -> {
+				max.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+				return name;
+			},
+			s -> s, 
+			null,
+			(name, s) -> {
+				// slow writer
+				sleep();
+				inFlight.decrementAndGet();
+			});
+		assertTrue("Too many in flight: " + max.get(), max.get() <= 3);
+	}
+	
+	@Test
+	public void error() {
+		List<String> written = new ArrayList<>();
+		try {
+			new Pipeline<String,String>(2, 2, 4).run(names(20), 
+				name -> {
+					if (name.equals("5")) {
+						throw new IOException("Broken " + name);
+					}
+					return name;
+				},
+				s -> s, null, (name, s) -> written.add(name));
+			fail("Error should be thrown");
+		} catch (IOException ex) {
+			assertEquals("Broken 5", ex.getCause().getMessage());
+		}
+		assertEquals(names(5), written);
+	}
+	
+	@Test
+	public void threadsEqualSequential() throws IOException {
+		TestInput in = new TestInput(tmp.newFolder("in"), 30);
+		String dir = in.getDir().getPath();
+		
+		// streaming, and collecting all procedures into one model before writing
+		for (String mode: new String[]{ "--stream", "--format=nt" }) {
+			File seq = tmp.newFolder();
+			File par = tmp.newFolder();
+			Main.main(new String[]{ dir, seq.getPath(), "--offline", "--threads=1", mode });
+			Main.main(new String[]{ dir, par.getPath(), "--offline", "--threads=4", 
+									"--parse-threads=2", "--queue=3", mode });
+			byte[] expected = Files.readAllBytes(new File(seq, "cpsv.nt").toPath());
+			assertTrue(expected.length > 0);
+			if (mode.equals("--stream")) {
+				// written in the same order
+				assertArrayEquals(expected, Files.readAllBytes(new File(par, "cpsv.nt").toPath()));
+			} else {
+				assertEquals(TestInput.read(new File(seq, "cpsv.nt")), 
+							TestInput.read(new File(par, "cpsv.nt")));
+			}
+		}
+	}
+}
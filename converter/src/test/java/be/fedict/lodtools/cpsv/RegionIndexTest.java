@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import be.fedict.lodtools.cpsv.vocab.ATU;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Mapping of municipalities to regions.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class RegionIndexTest {
+	private final RegionIndex index = new RegionIndex();
+	
+	/**
+	 * Get the NIS codes of the 19 municipalities of Brussels
+	 * 
+	 * @return list of NIS codes
+	 */
+	private static List<String> brussels() {
+		List<String> codes = new ArrayList<>();
+		for (int i = 1; i <= 19; i++) {
+			codes.add(String.format("21%03d", i));
+		}
+		return codes;
+	}
+	
+	@Test
+	public void brusselsOnly() {
+		assertEquals(Collections.singletonList(ATU.ID_BXL), index.regions(brussels()));
+		assertEquals(Collections.singletonList(ATU.ID_BXL), 
+					index.regions(Arrays.asList("21004")));
+	}
+	
+	@Test
+	public void walloniaAndGermanCommunity() {
+		assertEquals(Collections.singletonList(ATU.ID_WAL), 
+					index.regions(Arrays.asList("62063", "63001", "25005")));
+		assertEquals(Collections.singletonList(ATU.ID_WAL_EX_GER), 
+					index.regions(Arrays.asList("62063", "25005")));
+		assertEquals(Collections.singletonList(ATU.ID_GER), 
+					index.regions(Arrays.asList("63001", " 63012 ")));
+	}
+	
+	@Test
+	public void multipleRegions() {
+		assertEquals(Arrays.asList(ATU.ID_BXL, ATU.ID_VLA, ATU.ID_WAL), 
+					index.regions(Arrays.asList("44021", "21004", "92094", "63040")));
+		assertEquals(Arrays.asList(ATU.ID_VLA, ATU.ID_WAL_EX_GER), 
+					index.regions(Arrays.asList("24062", "57081")));
+	}
+	
+	@Test
+	public void invalidCodeFallsBack() {
+		// invalid code, so the regions are guessed from the number of municipalities
+		List<String> codes = brussels();
+		codes.set(18, "00000");
+		assertEquals(Collections.singletonList(ATU.ID_BXL), index.regions(codes));
+		assertEquals(Collections.emptyList(), index.regions(Arrays.asList("21004", null)));
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Conversion split over multiple shards, and merging the shards.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class ShardTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	private static void invalid(String str) {
+		try {
+			Shard.parse(str);
+			fail("Shard " + str + " should be invalid");
+		} catch (IllegalArgumentException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("1"));
+		}
+	}
+	
+	@Test
+	public void parse() {
+		assertEquals("1/2", Shard.parse("1/2").toString());
+		assertEquals("cpsv-shard-2-of-2", Shard.parse("2/2").getName());
+		// numbered from 1
+		invalid("0/2");
+		invalid("3/2");
+		invalid("1/0");
+		invalid("2");
+		invalid("a/2");
+		invalid("/2");
+	}
+	
+	@Test
+	public void containsOnce() {
+		Shard s1 = new Shard(1, 3);
+		Shard s2 = new Shard(2, 3);
+		Shard s3 = new Shard(3, 3);
+		for (int i = 0; i < 100; i++) {
+			String name = "procedure" + i + ".xml";
+			int count = (s1.contains(name) ? 1 : 0) + (s2.contains(name) ? 1 : 0) 
+											+ (s3.contains(name) ? 1 : 0);
+			assertEquals(name, 1, count);
+		}
+		assertTrue(new Shard(1, 1).contains("procedure1.xml"));
+	}
+	
+	@Test
+	public void mergeEqualsFullRun() throws IOException {
+		TestInput in = new TestInput(tmp.newFolder("in"), 12);
+		File full = tmp.newFolder("full");
+		File shards = tmp.newFolder("shards");
+		File merged = tmp.newFolder("merged");
+		String dir = in.getDir().getPath();
+		
+		Main.main(new String[]{ dir, full.getPath(), "--offline" });
+		Main.main(new String[]{ dir, shards.getPath(), "--offline", "--shard=1/2" });
+		Main.main(new String[]{ dir, shards.getPath(), "--offline", "--shard=2/2" });
+		
+		Model m1 = TestInput.read(new File(shards, "cpsv-shard-1-of-2.nt"));
+		Model m2 = TestInput.read(new File(shards, "cpsv-shard-2-of-2.nt"));
+		assertFalse(m1.isEmpty());
+		assertFalse(m2.isEmpty());
+		
+		Main.main(new String[]{ "merge", merged.getPath(), shards.getPath() });
+		Model expected = TestInput.read(new File(full, "cpsv.nt"));
+		assertEquals(expected, TestInput.read(new File(merged, "cpsv.nt")));
+		
+		// shared nodes are in both shards, but only once in the merged output
+		Model both = new LinkedHashModel(m1);
+		both.retainAll(m2);
+		assertFalse(both.isEmpty());
+		List<File> files = Shard.files(Collections.singletonList(shards.getPath()));
+		assertEquals(2, files.size());
+		Model collected = new LinkedHashModel();
+		Shard.merge(files, new StatementCollector(collected));
+		assertEquals(expected, collected);
+	}
+}
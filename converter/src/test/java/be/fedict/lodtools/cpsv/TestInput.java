@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+
+/**
+ * Input directory with generated EDRL procedures, for tests running the converter.
+ * 
+ * Procedures share administrations, addresses and prices, 
+ * to check that statements about shared nodes are not duplicated.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class TestInput {
+	public final static String[] LANGS = { "NL", "FR", "EN", "DE" };
+	
+	private final File dir;
+	
+	/**
+	 * Get the input directory
+	 * 
+	 * @return directory
+	 */
+	public File getDir() {
+		return dir;
+	}
+	
+	/**
+	 * Write all language variants of a procedure
+	 * 
+	 * @param nr number of the procedure
+	 * @param title title (without language)
+	 * @throws IOException 
+	 */
+	public void write(int nr, String title) throws IOException {
+		int adm = nr % 3;
+		for (String lang: LANGS) {
+			String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><fedict.edrl.domain.Procedure>"
+				+ "<contentId>" + (1000 + nr) + "</contentId><language>" + lang + "</language>"
+				+ "<lifecycle>START</lifecycle><title>" + title + " (" + lang + ")</title>"
+				+ "<shortDescription>&lt;p&gt;Description " + nr + "&lt;/p&gt;</shortDescription>"
+				+ "<applicationSummary>Summary</applicationSummary>"
+				+ "<applicableTo>Companies</applicableTo><applicableExceptions>None</applicableExceptions>"
+				+ "<forms><fedict.edrl.domain.Link><url>http://www.example.be/form/" + nr + "</url>"
+				+ "<description>Form " + nr + "</description></fedict.edrl.domain.Link></forms>"
+				+ "<legalBases></legalBases><responsibleAdministration>"
+				+ "<municipalities><fedict.edrl.domain.Municipality><nisCode>2100" + (1 + adm) 
+				+ "</nisCode></fedict.edrl.domain.Municipality></municipalities>"
+				+ "<administration><code>ADM " + adm + "</code><name>Administration " + adm 
+				+ " (" + lang + ")</name><companyNumber>020000000" + adm + "</companyNumber>"
+				+ "</administration><address><addressId><mainCode>" + adm + "</mainCode>"
+				+ "<subCode>0</subCode></addressId><postcode>1000</postcode>"
+				+ "<municipality>Brussel</municipality><street>Wetstraat</street>"
+				+ "<number>" + adm + "</number></address></responsibleAdministration>"
+				+ "<price>" + ((nr % 2 == 0) ? "Gratis" : "10 EUR") + "</price>"
+				+ "</fedict.edrl.domain.Procedure>";
+			Files.write(new File(new File(dir, lang), "procedure" + nr + ".xml").toPath(), 
+						xml.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	/**
+	 * Remove all language variants of a procedure
+	 * 
+	 * @param nr number of the procedure
+	 * @throws IOException 
+	 */
+	public void delete(int nr) throws IOException {
+		for (String lang: LANGS) {
+			Files.delete(new File(new File(dir, lang), "procedure" + nr + ".xml").toPath());
+		}
+	}
+	
+	/**
+	 * Read an N-Triples file
+	 * 
+	 * @param f file
+	 * @return RDF model
+	 * @throws IOException 
+	 */
+	public static Model read(File f) throws IOException {
+		try (InputStream in = new FileInputStream(f)) {
+			return Rio.parse(in, "", RDFFormat.NTRIPLES);
+		}
+	}
+	
+	/**
+	 * Constructor, creates the language subdirectories and procedures
+	 * 
+	 * @param dir input directory
+	 * @param count number of procedures
+	 * @throws IOException 
+	 */
+	public TestInput(File dir, int count) throws IOException {
+		this.dir = dir;
+		for (String lang: LANGS) {
+			Files.createDirectories(new File(dir, lang).toPath());
+		}
+		for (int i = 1; i <= count; i++) {
+			write(i, "Procedure " + i);
+		}
+	}
+}
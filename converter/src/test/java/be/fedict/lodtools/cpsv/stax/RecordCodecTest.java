@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv.stax;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Encoding and decoding procedure records.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class RecordCodecTest {
+	private final List<String> table = new ArrayList<>();
+	private final Map<String,Integer> ids = new HashMap<>();
+	
+	/**
+	 * Fill the string table, so the next references need more than one byte
+	 * 
+	 * @param n number of strings
+	 */
+	private void skip(int n) {
+		for (int i = 0; i < n; i++) {
+			intern("unused " + table.size());
+		}
+	}
+	
+	private int intern(String s) {
+		return ids.computeIfAbsent(s, k -> {
+			table.add(k);
+			return table.size() - 1;
+		});
+	}
+	
+	/**
+	 * Encode and decode a record, and check that the whole record was read
+	 * 
+	 * @param p record
+	 * @return decoded record
+	 */
+	private ProcedureRecord roundTrip(ProcedureRecord p) {
+		byte[] b = RecordCodec.encode(p, this::intern);
+		String[] strings = table.toArray(new String[0]);
+		ByteBuffer buf = ByteBuffer.wrap(b);
+		ProcedureRecord q = RecordCodec.decode(buf, strings);
+		assertFalse(buf.hasRemaining());
+		assertArrayEquals(b, RecordCodec.encode(q, this::intern));
+		return q;
+	}
+	
+	private static ProcedureRecord.Link link(String url, String desc) {
+		ProcedureRecord.Link l = new ProcedureRecord.Link();
+		l.url = url;
+		l.description = desc;
+		return l;
+	}
+	
+	@Test
+	public void nulls() {
+		ProcedureRecord q = roundTrip(new ProcedureRecord());
+		assertNull(q.getID());
+		assertNull(q.getTitle());
+		assertNull(q.getPrice());
+		assertNull(q.getIndicators());
+		assertNull(q.getResponsible());
+		assertTrue(q.getForms().isEmpty());
+		assertTrue(q.getLegal().isEmpty());
+		assertTrue(q.getAdditional().isEmpty());
+		assertTrue(q.getCities().isEmpty());
+		assertTrue(q.getSectors().isEmpty());
+		assertTrue(q.getActivities().isEmpty());
+	}
+	
+	@Test
+	public void strings() {
+		ProcedureRecord p = new ProcedureRecord();
+		p.id = "100001";
+		p.language = "NL";
+		p.title = "Procedure";
+		p.desc = "";
+		p.applies = "<p>Companies</p>";
+		p.price = "Procedure";
+		p.legal.add(link("http://www.example.be/1", null));
+		p.legal.add(link(null, "Wet van 3 mei 1999"));
+		
+		ProcedureRecord q = roundTrip(p);
+		assertEquals("100001", q.getID());
+		assertEquals("NL", q.getLanguage());
+		assertEquals("Procedure", q.getTitle());
+		assertEquals("", q.getDesc());
+		assertEquals("<p>Companies</p>", q.getApplies());
+		assertNull(q.getAppliesExcept());
+		assertEquals("Procedure", q.getPrice());
+		assertEquals(2, q.getLegal().size());
+		assertEquals("http://www.example.be/1", q.getLegal().get(0).getURL());
+		assertNull(q.getLegal().get(0).getDescription());
+		assertNull(q.getLegal().get(1).getURL());
+		assertEquals("Wet van 3 mei 1999", q.getLegal().get(1).getDescription());
+		// same string is stored once
+		assertEquals(7, table.size());
+	}
+	
+	@Test
+	public void largeReferences() {
+		// references of one, two and three bytes
+		for (int n: new int[] { 100, 127, 1, 16_000, 300, 20_000 }) {
+			skip(n);
+			ProcedureRecord p = new ProcedureRecord();
+			p.title = "Title " + table.size();
+			p.price = "Price " + table.size();
+			assertEquals(p.title, roundTrip(p).getTitle());
+			assertEquals(p.price, roundTrip(p).getPrice());
+		}
+	}
+	
+	@Test
+	public void largeLists() {
+		ProcedureRecord p = new ProcedureRecord();
+		for (int i = 0; i < 200; i++) {
+			ProcedureRecord.Municipality m = new ProcedureRecord.Municipality();
+			m.nisCode = String.valueOf(21000 + i);
+			p.cities.add(m);
+		}
+		for (int i = 0; i < 130; i++) {
+			p.forms.add(link("http://www.example.be/form/" + i, null));
+		}
+		ProcedureRecord q = roundTrip(p);
+		assertEquals(200, q.getCities().size());
+		assertEquals("21199", q.getCities().get(199).getNisCode());
+		assertEquals(130, q.getForms().size());
+		assertEquals("http://www.example.be/form/129", q.getForms().get(129).getURL());
+	}
+	
+	@Test
+	public void flags() {
+		ProcedureRecord p = new ProcedureRecord();
+		p.indicators = new ProcedureRecord.Indicator();
+		ProcedureRecord q = roundTrip(p);
+		assertNotNull(q.getIndicators());
+		assertNull(q.getResponsible());
+		
+		p = new ProcedureRecord();
+		p.responsible = new ProcedureRecord.Responsible();
+		q = roundTrip(p);
+		assertNull(q.getIndicators());
+		assertNotNull(q.getResponsible());
+		assertNull(q.getResponsible().getAdministration());
+		assertNull(q.getResponsible().getAddress());
+		
+		p.responsible.administration = new ProcedureRecord.Administration();
+		p.responsible.administration.name = "FOD BOSA";
+		q = roundTrip(p);
+		assertEquals("FOD BOSA", q.getResponsible().getAdministration().getName());
+		assertNull(q.getResponsible().getAddress());
+		
+		p.responsible.administration = null;
+		p.responsible.address = new ProcedureRecord.Address();
+		p.responsible.address.city = "Brussel";
+		q = roundTrip(p);
+		assertNull(q.getResponsible().getAdministration());
+		assertEquals("Brussel", q.getResponsible().getAddress().getCity());
+		
+		p.indicators = new ProcedureRecord.Indicator();
+		p.responsible.administration = new ProcedureRecord.Administration();
+		p.responsible.administration.code = "1";
+		p.responsible.address.contactSite = "http://www.example.be";
+		// activities follow the flags and optional parts
+		ProcedureRecord.Activity a = new ProcedureRecord.Activity();
+		a.code = "A";
+		p.activities.add(a);
+		q = roundTrip(p);
+		assertNotNull(q.getIndicators());
+		assertEquals("1", q.getResponsible().getAdministration().getCode());
+		assertEquals("Brussel", q.getResponsible().getAddress().getCity());
+		assertEquals("http://www.example.be", q.getResponsible().getAddress().getContactSite());
+		assertEquals("A", q.getActivities().get(0).getCode());
+	}
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2018, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.lodtools.cpsv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Scripted HTTP/1.1 server for testing ELI lookups, with keep-alive 
+ * and pipelined requests.
+ * Requests are answered in order, using a function returning the reply
+ * for the request target (path and query).
+ * 
+ * Also used as a stand-alone stub of the ELI service, by the benchmarks
+ * and for testing the converter.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class EliTestServer implements AutoCloseable {
+	private final ServerSocket server;
+	private final Function<String,Reply> handler;
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+	private final boolean record;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicInteger connections = new AtomicInteger();
+	private final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "eli-test-server");
+		t.setDaemon(true);
+		return t;
+	});
+	
+	/**
+	 * Scripted reply
+	 */
+	public static class Reply {
+		private int status = 200;
+		private String body = "";
+		private String type = "application/n-triples";
+		private boolean chunked = false;
+		private boolean trailer = false;
+		private boolean close = false;
+		private boolean interim = false;
+		private String location = null;
+		private long delay = 0;
+		
+		/**
+		 * Reply with status 200 and an N-Triples document with these subjects
+		 * 
+		 * @param iris subject IRIs
+		 * @return reply
+		 */
+		public static Reply ok(String... iris) {
+			Reply r = new Reply();
+			StringBuilder sb = new StringBuilder();
+			for (String iri: iris) {
+				sb.append('<').append(iri).append("> ")
+					.append("<http://purl.org/dc/terms/title> \"title\" .\n");
+			}
+			r.body = sb.toString();
+			return r;
+		}
+		
+		/**
+		 * Reply with a status code and a short text body
+		 * 
+		 * @param status HTTP status code
+		 * @return reply
+		 */
+		public static Reply status(int status) {
+			Reply r = new Reply();
+			r.status = status;
+			r.body = "Status " + status;
+			return r;
+		}
+		
+		/**
+		 * Redirect to another URL
+		 * 
+		 * @param status 3xx status code
+		 * @param location target URL
+		 * @return reply
+		 */
+		public static Reply redirect(int status, String location) {
+			Reply r = status(status);
+			r.location = location;
+			return r;
+		}
+		
+		/**
+		 * Reply with status 200 and another body
+		 * 
+		 * @param type content type
+		 * @param body body
+		 * @return reply
+		 */
+		public static Reply body(String type, String body) {
+			Reply r = new Reply();
+			r.type = type;
+			r.body = body;
+			return r;
+		}
+		
+		/**
+		 * Use chunked transfer encoding
+		 * 
+		 * @return this reply
+		 */
+		public Reply chunked() {
+			chunked = true;
+			return this;
+		}
+		
+		/**
+		 * Use chunked transfer encoding, with trailer fields after the last chunk
+		 * 
+		 * @return this reply
+		 */
+		public Reply trailer() {
+			chunked = true;
+			trailer = true;
+			return this;
+		}
+		
+		/**
+		 * Close the connection after this reply
+		 * 
+		 * @return this reply
+		 */
+		public Reply close() {
+			close = true;
+			return this;
+		}
+		
+		/**
+		 * Send a 100 Continue interim response first
+		 * 
+		 * @return this reply
+		 */
+		public Reply interim() {
+			interim = true;
+			return this;
+		}
+		
+		/**
+		 * Wait before replying
+		 * 
+		 * @param millis delay in milliseconds
+		 * @return this reply
+		 */
+		public Reply delay(long millis) {
+			delay = millis;
+			return this;
+		}
+	}
+	
+	/**
+	 * Reply like the ELI match service: one ELI IRI derived from the date, 
+	 * type and title, or 404 when no date was given.
+	 * 
+	 * @param delay delay per request in milliseconds, to simulate a remote service
+	 * @return function returning the reply for a request target
+	 */
+	public static Function<String,Reply> stub(long delay) {
+		return target -> {
+			String date = param(target, "date");
+			if (date == null || date.isEmpty()) {
+				return Reply.status(404).delay(delay);
+			}
+			String type = String.valueOf(param(target, "type")).toLowerCase(Locale.ROOT);
+			String title = String.valueOf(param(target, "q")).toLowerCase(Locale.ROOT);
+			int id = Math.abs(title.hashCode() % 1000);
+			return Reply.ok("http://www.ejustice.just.fgov.be/eli/" + type + "/" 
+							+ date.replace('-', '/') + "/" + id).delay(delay);
+		};
+	}
+	
+	/**
+	 * Get a decoded query parameter from a request target
+	 * 
+	 * @param target request target
+	 * @param name parameter name
+	 * @return value or null
+	 */
+	public static String param(String target, String name) {
+		int q = target.indexOf('?');
+		if (q < 0) {
+			return null;
+		}
+		for (String p: target.substring(q + 1).split("&")) {
+			if (p.startsWith(name + "=")) {
+				try {
+					return URLDecoder.decode(p.substring(name.length() + 1), "UTF-8");
+				} catch (UnsupportedEncodingException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Get the base URL of the server
+	 * 
+	 * @return URL
+	 */
+	public String getURL() {
+		return "http://127.0.0.1:" + server.getLocalPort();
+	}
+	
+	/**
+	 * Get the targets of all requests received so far
+	 * 
+	 * @return list of request targets
+	 */
+	public List<String> getRequests() {
+		synchronized(requests) {
+			return new ArrayList<>(requests);
+		}
+	}
+	
+	/**
+	 * Get the number of requests received so far
+	 * 
+	 * @return number of requests
+	 */
+	public long getRequestCount() {
+		return count.get();
+	}
+	
+	/**
+	 * Get the number of accepted connections
+	 * 
+	 * @return number of connections
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+	
+	/**
+	 * Read a CRLF terminated line
+	 * 
+	 * @param in input stream
+	 * @return line or null at end of stream
+	 * @throws IOException 
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c == -1) {
+				return null;
+			}
+			if (c != '\r') {
+				sb.append((char) c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Write a reply
+	 * 
+	 * @param out output stream
+	 * @param r reply
+	 * @throws IOException 
+	 */
+	private static void write(OutputStream out, Reply r) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		if (r.interim) {
+			sb.append("HTTP/1.1 100 Continue\r\n\r\n");
+		}
+		byte[] body = r.body.getBytes(StandardCharsets.UTF_8);
+		sb.append("HTTP/1.1 ").append(r.status).append(" Test\r\n");
+		sb.append("Content-Type: ").append(r.type).append("\r\n");
+		if (r.location != null) {
+			sb.append("Location: ").append(r.location).append("\r\n");
+		}
+		if (r.close) {
+			sb.append("Connection: close\r\n");
+		}
+		if (r.chunked) {
+			sb.append("Transfer-Encoding: chunked\r\n\r\n");
+			// two chunks, to test reassembly
+			int half = body.length / 2;
+			out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+			out.write((Integer.toHexString(half) + ";ext=1\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.write(body, 0, half);
+			out.write(("\r\n" + Integer.toHexString(body.length - half) + "\r\n")
+											.getBytes(StandardCharsets.US_ASCII));
+			out.write(body, half, body.length - half);
+			out.write((r.trailer ? "\r\n0\r\nX-Test: 1\r\nX-Other: 2\r\n\r\n" : "\r\n0\r\n\r\n")
+											.getBytes(StandardCharsets.US_ASCII));
+		} else {
+			sb.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+			out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+			out.write(body);
+		}
+	}
+	
+	/**
+	 * Serve the requests on one connection
+	 * 
+	 * @param s socket
+	 */
+	private void serve(Socket s) {
+		try (Socket sock = s) {
+			InputStream in = new BufferedInputStream(sock.getInputStream());
+			OutputStream out = new BufferedOutputStream(sock.getOutputStream());
+			String line;
+			while ((line = readLine(in)) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				String target = line.split(" ")[1];
+				String header;
+				while ((header = readLine(in)) != null && !header.isEmpty()) {
+					// headers are not used
+				}
+				count.incrementAndGet();
+				if (record) {
+					requests.add(target);
+				}
+				Reply r = handler.apply(target);
+				if (r.delay > 0) {
+					Thread.sleep(r.delay);
+				}
+				write(out, r);
+				out.flush();
+				if (r.close) {
+					return;
+				}
+			}
+		} catch (IOException ex) {
+			// client closed the connection
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		server.close();
+		pool.shutdownNow();
+	}
+	
+	/**
+	 * Constructor, starts the server on a free port and records the requests
+	 * 
+	 * @param handler function returning the reply for a request target
+	 * @throws IOException 
+	 */
+	public EliTestServer(Function<String,Reply> handler) throws IOException {
+		this(0, handler, true);
+	}
+	
+	/**
+	 * Constructor, starts the server
+	 * 
+	 * @param port port number, 0 for any free port
+	 * @param handler function returning the reply for a request target
+	 * @param record keep the targets of all requests, for {@link #getRequests()}
+	 * @throws IOException 
+	 */
+	public EliTestServer(int port, Function<String,Reply> handler, boolean record) 
+															throws IOException {
+		this.handler = handler;
+		this.record = record;
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		pool.submit(() -> {
+			while (!server.isClosed()) {
+				try {
+					Socket s = server.accept();
+					connections.incrementAndGet();
+					pool.submit(() -> serve(s));
+				} catch (IOException ex) {
+					// server closed
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Run stand-alone as a stub of the ELI service
+	 * 
+	 * @param args port and optional delay in milliseconds
+	 * @throws IOException 
+	 * @throws InterruptedException 
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : 8080;
+		long delay = (args.length > 1) ? Long.parseLong(args[1]) : 0;
+		EliTestServer stub = new EliTestServer(port, stub(delay), false);
+		System.out.println("ELI stub running on " + stub.getURL());
+		// server threads are daemon threads
+		Thread.currentThread().join();
+	}
+}